@@ -3,21 +3,20 @@ package com.example.soundbar;
 import android.graphics.Color;
 import android.media.MediaPlayer;
 import android.os.Bundle;
-import android.os.Handler;
 import android.widget.Button;
 import android.widget.ListView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.soundbarlib.PlaybackController;
+import com.example.soundbarlib.Playlist;
 import com.example.soundbarlib.SoundBarPlayerView;
 
 public class MainActivity extends AppCompatActivity {
 
     private SoundBarPlayerView soundBarView;
-    private MediaPlayer mediaPlayer;
-    private Handler handler = new Handler();
-    private Runnable updateRunnable;
-    private boolean isPlaying = false;
+    private PlaybackController playbackController;
+    private Playlist playlist;
 
     private final int[] songResIds = {
             R.raw.mysong,
@@ -31,7 +30,6 @@ public class MainActivity extends AppCompatActivity {
             "Sia - Unstoppable"
     };
 
-    private int currentSongIndex = 0;
     private SongAdapter adapter;
     private Button playPauseBtn;
 
@@ -50,6 +48,7 @@ public class MainActivity extends AppCompatActivity {
     private void initViews() {
         soundBarView = findViewById(R.id.soundBarView);
         playPauseBtn = findViewById(R.id.playButton);
+        playbackController = new PlaybackController(soundBarView);
     }
 
     private void initColorButtons() {
@@ -67,84 +66,34 @@ public class MainActivity extends AppCompatActivity {
         adapter = new SongAdapter(this, songNames);
         songListView.setAdapter(adapter);
 
-        songListView.setOnItemClickListener((parent, view, position, id) -> {
-            currentSongIndex = position;
-            adapter.setPlayingIndex(position);
-            playSelectedSong();
-        });
+        // The playlist follows the list order, so it can prepare the rows around the playing one.
+        playlist = new Playlist(this, soundBarView, playbackController, songResIds);
+        playlist.setOnTrackChangeListener(index -> adapter.setPlayingIndex(index));
+
+        songListView.setOnItemClickListener((parent, view, position, id) -> playlist.play(position));
     }
 
     private void initPlayPauseButton() {
         playPauseBtn.setOnClickListener(v -> {
+            MediaPlayer mediaPlayer = playlist.getCurrentPlayer();
             if (mediaPlayer != null) {
                 if (mediaPlayer.isPlaying()) {
-                    mediaPlayer.pause();
-                    isPlaying = false;
+                    playbackController.pause();
                 } else {
-                    mediaPlayer.start();
-                    isPlaying = true;
-                    startUpdating();
+                    playbackController.play();
                 }
             }
         });
     }
 
     private void initSeekListener() {
-        soundBarView.setOnSeekListener(percent -> {
-            if (mediaPlayer != null && soundBarView.getTotalBars() > 0) {
-                int seekTo = (int) (mediaPlayer.getDuration() * percent);
-                mediaPlayer.seekTo(seekTo);
-                soundBarView.setPlayedBars((int) (percent * soundBarView.getTotalBars()));
-            }
-        });
-    }
-
-    private void playSelectedSong() {
-        if (mediaPlayer != null) {
-            mediaPlayer.stop();
-            mediaPlayer.release();
-            mediaPlayer = null;
-            handler.removeCallbacks(updateRunnable);
-        }
-
-        int resId = songResIds[currentSongIndex];
-        soundBarView.loadAudioResource(this, resId);
-        mediaPlayer = MediaPlayer.create(this, resId);
-        mediaPlayer.start();
-        isPlaying = true;
-        startUpdating();
-
-        mediaPlayer.setOnCompletionListener(mp -> {
-            isPlaying = false;
-            handler.removeCallbacks(updateRunnable);
-        });
-    }
-
-    private void startUpdating() {
-        updateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (mediaPlayer != null && isPlaying) {
-                    int position = mediaPlayer.getCurrentPosition();
-                    int duration = mediaPlayer.getDuration();
-                    if (duration > 0) {
-                        float percent = position / (float) duration;
-                        int playedBars = (int) (percent * soundBarView.getTotalBars());
-                        soundBarView.setPlayedBars(playedBars);
-                    }
-                    handler.postDelayed(this, 50);
-                }
-            }
-        };
-        handler.post(updateRunnable);
+        soundBarView.setSeekMode(SoundBarPlayerView.SEEK_MODE_THROTTLED);
+        soundBarView.setOnSeekListener(playbackController);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (mediaPlayer != null) {
-            mediaPlayer.release();
-        }
-        handler.removeCallbacksAndMessages(null);
+        playlist.release();
     }
 }
@@ -0,0 +1,21 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":soundbarcore"))
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh
+    profilers.add("gc")
+    resultFormat = "JSON"
+    // Narrow a run with e.g. -PjmhIncludes=BinningBenchmark
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
+}
@@ -0,0 +1,65 @@
+package com.example.soundbarlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a WAV file into a {@link PeakPyramid}, across lengths, channel counts and sample
+ * formats. Only the fixture for the current parameters exists at a time; the longest ones
+ * take up to about 1.3 GB of temporary disk space.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzeBenchmark {
+
+    /** Ten seconds, ten minutes and an hour. */
+    @Param({"10", "600", "3600"})
+    public int seconds;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"PCM8", "PCM16", "PCM24", "PCM32", "FLOAT32"})
+    public WavFixtures.Encoding encoding;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void createFixture() throws IOException {
+        file = WavFixtures.create(seconds, channels, encoding);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixture() {
+        file.delete();
+    }
+
+    @Benchmark
+    public PeakPyramid buildPyramid() throws IOException {
+        return WaveformGenerator.buildPyramid(file);
+    }
+
+    @Benchmark
+    public PeakPyramid buildPyramidParallel() throws IOException {
+        return WaveformGenerator.buildPyramidParallel(file);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.soundbarlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning an already decoded pyramid into bars, which happens on every resize, and the
+ * legacy one-shot {@link WaveformGenerator#generateFromWav} path for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinningBenchmark {
+
+    @Param({"50", "300", "1000", "4000"})
+    public int bars;
+
+    @Param({"10", "600", "3600"})
+    public int seconds;
+
+    private File file;
+    private PeakPyramid pyramid;
+    private Waveform waveform;
+    private final BarGeometry geometry = new BarGeometry();
+
+    @Setup(Level.Trial)
+    public void createFixture() throws IOException {
+        // Binning cost does not depend on the sample format, so one format is enough.
+        file = WavFixtures.create(seconds, 2, WavFixtures.Encoding.PCM16);
+        pyramid = WaveformGenerator.buildPyramid(file);
+        waveform = pyramid.toWaveform(bars);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixture() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Waveform toWaveform() {
+        return pyramid.toWaveform(bars);
+    }
+
+    @Benchmark
+    public boolean barGeometry() {
+        geometry.markDirty();
+        return geometry.update(waveform.levels, null, 1080, 400, 0f, 1080f / waveform.levels.length);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public List<Integer> generateFromWav() {
+        return WaveformGenerator.generateFromWav(file, bars);
+    }
+}
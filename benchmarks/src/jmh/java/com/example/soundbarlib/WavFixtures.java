@@ -0,0 +1,126 @@
+package com.example.soundbarlib;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes synthetic WAV files for the benchmarks, so they need no audio assets. The signal is
+ * a tone with a slowly changing envelope plus a little noise, which keeps every bar different
+ * and every sample path busy. Output is deterministic.
+ */
+final class WavFixtures {
+
+    static final int SAMPLE_RATE = 44_100;
+    private static final int HEADER_SIZE = 44;
+    private static final int CHUNK_FRAMES = 16 * 1024;
+
+    /** Sample formats, named after {@code @Param} values. */
+    enum Encoding {
+        PCM8(WavHeader.FORMAT_PCM, 8),
+        PCM16(WavHeader.FORMAT_PCM, 16),
+        PCM24(WavHeader.FORMAT_PCM, 24),
+        PCM32(WavHeader.FORMAT_PCM, 32),
+        FLOAT32(WavHeader.FORMAT_IEEE_FLOAT, 32);
+
+        final int format;
+        final int bitsPerSample;
+
+        Encoding(int format, int bitsPerSample) {
+            this.format = format;
+            this.bitsPerSample = bitsPerSample;
+        }
+    }
+
+    private WavFixtures() {
+    }
+
+    /** Writes a {@code seconds}-long file to a new temporary file, deleted on exit. */
+    static File create(int seconds, int channels, Encoding encoding) throws IOException {
+        File file = File.createTempFile("fixture-" + seconds + "s-" + channels + "ch-", ".wav");
+        file.deleteOnExit();
+        write(file, (long) seconds * SAMPLE_RATE, channels, encoding);
+        return file;
+    }
+
+    static void write(File file, long frames, int channels, Encoding encoding) throws IOException {
+        int bytesPerSample = encoding.bitsPerSample / 8;
+        int blockAlign = bytesPerSample * channels;
+        long dataLength = frames * blockAlign;
+        if (dataLength + HEADER_SIZE - 8 > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Too long for a WAV file: " + frames + " frames");
+        }
+
+        try (FileOutputStream out = new FileOutputStream(file);
+             FileChannel channel = out.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0x46464952) // "RIFF"
+                    .putInt((int) (dataLength + HEADER_SIZE - 8))
+                    .putInt(0x45564157) // "WAVE"
+                    .putInt(0x20746d66) // "fmt "
+                    .putInt(16)
+                    .putShort((short) encoding.format)
+                    .putShort((short) channels)
+                    .putInt(SAMPLE_RATE)
+                    .putInt(SAMPLE_RATE * blockAlign)
+                    .putShort((short) blockAlign)
+                    .putShort((short) encoding.bitsPerSample)
+                    .putInt(0x61746164) // "data"
+                    .putInt((int) dataLength);
+            header.flip();
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_FRAMES * blockAlign).order(ByteOrder.LITTLE_ENDIAN);
+            int noise = 0x2545F491;
+            for (long frame = 0; frame < frames; ) {
+                chunk.clear();
+                long end = Math.min(frames, frame + CHUNK_FRAMES);
+                for (; frame < end; frame++) {
+                    double t = frame / (double) SAMPLE_RATE;
+                    double envelope = 0.15 + 0.8 * Math.abs(Math.sin(t * 0.7)) * Math.abs(Math.sin(t * 3.1));
+                    double tone = Math.sin(2 * Math.PI * 220 * t);
+                    for (int c = 0; c < channels; c++) {
+                        noise ^= noise << 13;
+                        noise ^= noise >>> 17;
+                        noise ^= noise << 5;
+                        double value = envelope * (0.9 * tone + 0.1 * (noise / (double) Integer.MAX_VALUE));
+                        putSample(chunk, encoding, Math.max(-1.0, Math.min(1.0, value)));
+                    }
+                }
+                chunk.flip();
+                writeFully(channel, chunk);
+            }
+        }
+    }
+
+    private static void putSample(ByteBuffer out, Encoding encoding, double value) {
+        switch (encoding) {
+            case PCM8:
+                out.put((byte) (Math.round(value * 127) + 128));
+                break;
+            case PCM16:
+                out.putShort((short) Math.round(value * Short.MAX_VALUE));
+                break;
+            case PCM24: {
+                int sample = (int) Math.round(value * 0x7FFFFF);
+                out.put((byte) sample).put((byte) (sample >> 8)).put((byte) (sample >> 16));
+                break;
+            }
+            case PCM32:
+                out.putInt((int) Math.round(value * Integer.MAX_VALUE));
+                break;
+            case FLOAT32:
+                out.putFloat((float) value);
+                break;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
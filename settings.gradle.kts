@@ -22,3 +22,6 @@ dependencyResolutionManagement {
 rootProject.name = "soundbar"
 include(":app")
 include(":soundbarlib")
+include(":soundbarcore")
+include(":soundbarcli")
+include(":benchmarks")
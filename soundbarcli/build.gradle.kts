@@ -0,0 +1,16 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":soundbarcore"))
+}
+
+application {
+    mainClass = "com.example.soundbarcli.PrecomputeWaveforms"
+}
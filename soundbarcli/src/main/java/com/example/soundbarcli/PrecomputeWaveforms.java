@@ -0,0 +1,135 @@
+package com.example.soundbarcli;
+
+import com.example.soundbarlib.PeakPyramid;
+import com.example.soundbarlib.WaveformFile;
+import com.example.soundbarlib.WaveformGenerator;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Walks a directory of WAV files and writes a {@link WaveformFile} for each one into an output
+ * directory with the same layout, e.g. {@code in/a/song.wav} becomes {@code out/a/song.wf}.
+ * Files run in parallel; outputs newer than their input are skipped.
+ * <p>
+ * Memory stays bounded however large the tree is: the walk is lazy, at most a few files per
+ * thread are queued, and sample data is memory-mapped rather than read onto the heap, so each
+ * worker only holds the pyramid of the file it is on.
+ * <pre>
+ * PrecomputeWaveforms &lt;input dir&gt; &lt;output dir&gt; [--threads N]
+ * </pre>
+ */
+public class PrecomputeWaveforms {
+
+    private static final String OUTPUT_SUFFIX = ".wf";
+
+    private final Path input;
+    private final Path output;
+    private final int threads;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong audioMs = new AtomicLong();
+
+    public PrecomputeWaveforms(Path input, Path output, int threads) {
+        this.input = input;
+        this.output = output;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path input = null;
+        Path output = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (input == null) {
+                input = Paths.get(args[i]);
+            } else if (output == null) {
+                output = Paths.get(args[i]);
+            } else {
+                input = null;
+                break;
+            }
+        }
+        if (input == null || output == null || !Files.isDirectory(input)) {
+            System.err.println("Usage: PrecomputeWaveforms <input dir> <output dir> [--threads N]");
+            System.exit(2);
+        }
+
+        PrecomputeWaveforms batch = new PrecomputeWaveforms(input, output, threads);
+        long start = System.nanoTime();
+        batch.run();
+        batch.printReport(System.nanoTime() - start);
+        System.exit(batch.failed.get() > 0 ? 1 : 0);
+    }
+
+    public void run() throws IOException, InterruptedException {
+        // A short queue keeps the walk from running ahead of the workers; when it is full the
+        // walking thread decodes the next file itself.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        try (Stream<Path> files = Files.walk(input)) {
+            files.filter(file -> Files.isRegularFile(file) && isWav(file))
+                    .forEach(file -> executor.execute(() -> process(file)));
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+    }
+
+    private static boolean isWav(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav");
+    }
+
+    private void process(Path file) {
+        String name = input.relativize(file).toString();
+        Path target = output.resolve(name.substring(0, name.length() - ".wav".length()) + OUTPUT_SUFFIX);
+        Path temp = null;
+        try {
+            if (Files.exists(target)
+                    && Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+                skipped.incrementAndGet();
+                return;
+            }
+            PeakPyramid pyramid = WaveformGenerator.buildPyramid(file.toFile());
+
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), "wf", ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                WaveformFile.write(pyramid, out.getChannel());
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            written.incrementAndGet();
+            bytesRead.addAndGet(Files.size(file));
+            audioMs.addAndGet(pyramid.getDurationMs());
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            System.err.println("Failed: " + file + ": " + e);
+            if (temp != null) temp.toFile().delete();
+        }
+    }
+
+    private void printReport(long elapsedNanos) {
+        double seconds = Math.max(1e-9, elapsedNanos / 1e9);
+        double megabytes = bytesRead.get() / (1024.0 * 1024.0);
+        System.out.printf(Locale.ROOT, "Wrote %d waveforms (%d up to date, %d failed) in %.2f s%n",
+                written.get(), skipped.get(), failed.get(), seconds);
+        System.out.printf(Locale.ROOT, "%.1f files/s, %.1f MB/s, %.0fx real time on %d threads%n",
+                written.get() / seconds, megabytes / seconds, audioMs.get() / 1000.0 / seconds, threads);
+    }
+}
@@ -0,0 +1,14 @@
+plugins {
+    `java-library`
+}
+
+// Waveform analysis and the waveform file format, with no Android dependencies so they also
+// run on servers. The package is shared with soundbarlib.
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,40 @@
+package com.example.soundbarlib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A stream of interleaved PCM samples for {@link WaveformGenerator#buildPyramid(AudioSampleSource)}.
+ * Implementations decode whatever they read into chunks that are folded into the waveform as
+ * they arrive, so nothing is written to disk. {@link WavSampleSource} reads WAV files on any
+ * JVM; on Android, {@code MediaCodecSampleSource} decodes compressed formats.
+ * <p>
+ * The format getters must be valid before the first {@link #read()} and must not change
+ * afterwards.
+ */
+public interface AudioSampleSource extends Closeable {
+
+    int getSampleRate();
+
+    int getChannelCount();
+
+    /** {@link WavHeader#FORMAT_PCM} or {@link WavHeader#FORMAT_IEEE_FLOAT}. */
+    int getFormat();
+
+    /** Bits each sample occupies in a chunk: 8, 16, 24, 32 or 64. */
+    int getBitsPerSample();
+
+    /**
+     * Number of frames the stream holds, exact or estimated from the container, or -1 if
+     * unknown. It only sizes the waveform's bins; the decoded frames are what counts.
+     */
+    long getFrameCount();
+
+    /**
+     * Returns the next chunk of little-endian samples, from its position to its limit and
+     * holding whole frames only, or {@code null} at the end of the stream. The buffer is
+     * only valid until the next call.
+     */
+    ByteBuffer read() throws IOException;
+}
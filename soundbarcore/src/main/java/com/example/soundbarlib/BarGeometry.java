@@ -0,0 +1,78 @@
+package com.example.soundbarlib;
+
+/**
+ * Rectangles of the bars drawn by {@code SoundBarPlayerView}. They are recomputed only when
+ * the levels or the view size change, so steady-state frames just read the arrays.
+ */
+class BarGeometry {
+
+    float[] left = new float[0];
+    float[] top = new float[0];
+    float[] bottom = new float[0];
+    float barWidth;
+    float centerY;
+    int count;
+    /** Where bar 0 starts; {@code left[i]} is {@code offsetX + i * barWidth}. */
+    float offsetX;
+    /**
+     * Changes whenever the bars change other than by a horizontal shift, so cached renderings
+     * of them can be translated instead of redrawn while scrolling.
+     */
+    int version;
+
+    private byte[] levels;
+    private byte[] lowLevels;
+    private int width;
+    private int height;
+    private boolean dirty = true;
+
+    /** Forces a rebuild on the next {@link #update}, e.g. after levels changed in place. */
+    void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Brings the rectangles up to date for {@code levels} in a {@code width} x {@code height}
+     * view, with bar {@code i} starting at {@code offsetX + i * barWidth}. Bars extend
+     * {@code levels} above the center line and {@code lowLevels} below it; {@code null} lows
+     * mirror the levels.
+     *
+     * @return whether anything had to be recomputed
+     */
+    boolean update(byte[] levels, byte[] lowLevels, int width, int height, float offsetX, float barWidth) {
+        boolean shifted = offsetX != this.offsetX;
+        if (!dirty && levels == this.levels && lowLevels == this.lowLevels && width == this.width
+                && height == this.height && barWidth == this.barWidth) {
+            if (!shifted) return false;
+            this.offsetX = offsetX;
+            for (int i = 0; i < count; i++) {
+                left[i] = offsetX + i * barWidth;
+            }
+            return true;
+        }
+        version++;
+        this.levels = levels;
+        this.lowLevels = lowLevels;
+        this.width = width;
+        this.height = height;
+        this.offsetX = offsetX;
+        this.barWidth = barWidth;
+        dirty = false;
+
+        count = levels.length;
+        if (left.length < count) {
+            left = new float[count];
+            top = new float[count];
+            bottom = new float[count];
+        }
+        centerY = height * 0.4f;
+        float scale = height * 0.6f / 100f;
+        float halfScale = scale / 2;
+        for (int i = 0; i < count; i++) {
+            left[i] = offsetX + i * barWidth;
+            top[i] = centerY - levels[i] * halfScale;
+            bottom[i] = centerY + (lowLevels != null ? lowLevels[i] : levels[i]) * halfScale;
+        }
+        return true;
+    }
+}
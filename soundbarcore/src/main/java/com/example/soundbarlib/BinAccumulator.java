@@ -0,0 +1,140 @@
+package com.example.soundbarlib;
+
+import java.util.Arrays;
+
+/**
+ * Builds level 0 of a {@link PeakPyramid} from mono samples that arrive in chunks of any
+ * size, for streams whose exact length is not known up front. Bins are computed exactly as
+ * when the whole file is mapped, so both paths yield the same pyramid for the same samples.
+ * <p>
+ * With a bin limit, memory stays constant however long the stream runs: whenever the limit
+ * is reached, pairs of bins are merged and each bin covers twice as many frames from then on.
+ */
+class BinAccumulator {
+
+    private final int maxBins;
+    private int baseFrames;
+
+    private short[] min = new short[256];
+    private short[] max = new short[256];
+    private float[] meanAbs = new float[256];
+    private float[] rms = new float[256];
+    private int bins;
+    private long frames;
+
+    // The bin being filled.
+    private int binMin = Integer.MAX_VALUE;
+    private int binMax = Integer.MIN_VALUE;
+    private long binSumAbs;
+    private long binSumSquares;
+    private int binCount;
+
+    /** Level-0 bins will hold {@code baseFrames} frames, a power of two. */
+    BinAccumulator(int baseFrames) {
+        this(baseFrames, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Starts with bins of {@code baseFrames} frames, a power of two, and keeps at most
+     * {@code maxBins} bins, an even number.
+     */
+    BinAccumulator(int baseFrames, int maxBins) {
+        this.baseFrames = baseFrames;
+        this.maxBins = maxBins;
+    }
+
+    /** Frames per bin, which doubles each time the bin limit is reached. */
+    int getBaseFrames() {
+        return baseFrames;
+    }
+
+    /**
+     * Appends {@code mono[0, count)}, on a 16-bit scale, to the stream.
+     *
+     * @throws IllegalStateException if the stream would exceed {@code Integer.MAX_VALUE}
+     *                               frames, the most a {@link PeakPyramid} can describe
+     */
+    void add(int[] mono, int count) {
+        if (frames + count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Stream longer than " + Integer.MAX_VALUE + " frames");
+        }
+        int offset = 0;
+        while (offset < count) {
+            // Merge only once another bin is needed, so a stream that ends exactly at the
+            // limit keeps its bins.
+            if (binCount == 0 && bins == maxBins) mergePairs();
+            int n = Math.min(count - offset, baseFrames - binCount);
+            int min = binMin, max = binMax;
+            long sumAbs = 0;
+            long sumSquares = 0;
+            for (int i = offset, end = offset + n; i < end; i++) {
+                int value = mono[i];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sumAbs += Math.abs(value);
+                sumSquares += (long) value * value;
+            }
+            binMin = min;
+            binMax = max;
+            binSumAbs += sumAbs;
+            binSumSquares += sumSquares;
+            binCount += n;
+            offset += n;
+            if (binCount == baseFrames) closeBin();
+        }
+        frames += count;
+    }
+
+    /**
+     * Returns the pyramid of everything added, with a partial last bin. The accumulator must
+     * not be used afterwards.
+     */
+    PeakPyramid finish(int sampleRate) {
+        if (binCount > 0) closeBin();
+        long durationMs = sampleRate > 0 ? (frames * 1000 + sampleRate / 2) / sampleRate : 0;
+        PeakPyramid pyramid = new PeakPyramid(sampleRate, durationMs, (int) frames, baseFrames);
+        // An empty stream still gets the single silent bin the pyramid allocates.
+        System.arraycopy(min, 0, pyramid.min[0], 0, bins);
+        System.arraycopy(max, 0, pyramid.max[0], 0, bins);
+        System.arraycopy(meanAbs, 0, pyramid.meanAbs[0], 0, bins);
+        System.arraycopy(rms, 0, pyramid.rms[0], 0, bins);
+        pyramid.buildLevels();
+        return pyramid;
+    }
+
+    private void closeBin() {
+        if (bins == min.length) {
+            int capacity = bins * 2;
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+            meanAbs = Arrays.copyOf(meanAbs, capacity);
+            rms = Arrays.copyOf(rms, capacity);
+        }
+        // Same arithmetic as PeakPyramid.setBase.
+        min[bins] = (short) Math.max(Short.MIN_VALUE, binMin);
+        max[bins] = (short) Math.min(Short.MAX_VALUE, binMax);
+        meanAbs[bins] = (float) binSumAbs / binCount;
+        rms[bins] = (float) Math.sqrt((double) binSumSquares / binCount);
+        bins++;
+
+        binMin = Integer.MAX_VALUE;
+        binMax = Integer.MIN_VALUE;
+        binSumAbs = 0;
+        binSumSquares = 0;
+        binCount = 0;
+    }
+
+    /** Halves the bin count by merging neighbours, which all hold the same number of frames. */
+    private void mergePairs() {
+        for (int bin = 0; bin < bins / 2; bin++) {
+            int a = bin * 2;
+            int b = a + 1;
+            min[bin] = (short) Math.min(min[a], min[b]);
+            max[bin] = (short) Math.max(max[a], max[b]);
+            meanAbs[bin] = (meanAbs[a] + meanAbs[b]) / 2;
+            rms[bin] = (float) Math.sqrt((rms[a] * rms[a] + rms[b] * rms[b]) / 2);
+        }
+        bins /= 2;
+        baseFrames *= 2;
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.soundbarlib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Converts interleaved little-endian samples of one format to mono on a 16-bit scale. Each
+ * read bulk-copies the frames into a scratch array and mixes them in a plain array loop the
+ * JIT can unroll and vectorize, which is several times faster than indexed reads from the
+ * mapped buffer itself. Instances are not thread-safe.
+ */
+abstract class Downmixer {
+
+    final int channels;
+    final int maxFrames;
+
+    private Downmixer(int channels, int maxFrames) {
+        this.channels = channels;
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Returns a downmixer for {@code channels} channels of the given {@link WavHeader} format,
+     * each sample stored in {@code bytesPerSample} bytes, that reads up to {@code maxFrames}
+     * frames at a time.
+     *
+     * @throws IOException if the format is not supported
+     */
+    static Downmixer create(int format, int bytesPerSample, int channels, int maxFrames) throws IOException {
+        if (channels > 0) {
+            if (format == WavHeader.FORMAT_PCM) {
+                switch (bytesPerSample) {
+                    case 1: return new Pcm8(channels, maxFrames);
+                    case 2: return new Pcm16(channels, maxFrames);
+                    case 3: return new Pcm24(channels, maxFrames);
+                    case 4: return new Pcm32(channels, maxFrames);
+                }
+            } else if (format == WavHeader.FORMAT_IEEE_FLOAT) {
+                switch (bytesPerSample) {
+                    case 4: return new Float32(channels, maxFrames);
+                    case 8: return new Float64(channels, maxFrames);
+                }
+            }
+        }
+        throw new IOException("Unsupported audio format " + format + "/" + bytesPerSample * 8 + " bit, "
+                + channels + " channels");
+    }
+
+    /**
+     * Reads frames from {@code data} starting at its current position. Later calls to
+     * {@link #seek} and {@link #read} refer to this buffer until the next bind. The buffer
+     * must be little-endian; its own position is not moved.
+     */
+    abstract void bind(ByteBuffer data);
+
+    /** Moves to frame {@code frame} of the bound buffer. */
+    abstract void seek(int frame);
+
+    /** Downmixes the next {@code frames} frames, at most {@link #maxFrames}, into {@code mono}. */
+    abstract void read(int frames, int[] mono);
+
+    private static final class Pcm8 extends Downmixer {
+        private final byte[] interleaved;
+        private ByteBuffer samples;
+
+        Pcm8(int channels, int maxFrames) {
+            super(channels, maxFrames);
+            interleaved = new byte[maxFrames * channels];
+        }
+
+        @Override
+        void bind(ByteBuffer data) {
+            samples = data.slice();
+        }
+
+        @Override
+        void seek(int frame) {
+            samples.position(frame * channels);
+        }
+
+        @Override
+        void read(int frames, int[] mono) {
+            samples.get(interleaved, 0, frames * channels);
+            for (int f = 0, i = 0; f < frames; f++) {
+                int mixed = 0;
+                for (int c = 0; c < channels; c++, i++) mixed += (interleaved[i] & 0xFF) - 128;
+                mono[f] = (mixed << 8) / channels;
+            }
+        }
+    }
+
+    private static final class Pcm16 extends Downmixer {
+        private final short[] interleaved;
+        private ShortBuffer samples;
+
+        Pcm16(int channels, int maxFrames) {
+            super(channels, maxFrames);
+            interleaved = new short[maxFrames * channels];
+        }
+
+        @Override
+        void bind(ByteBuffer data) {
+            samples = data.asShortBuffer();
+        }
+
+        @Override
+        void seek(int frame) {
+            samples.position(frame * channels);
+        }
+
+        @Override
+        void read(int frames, int[] mono) {
+            samples.get(interleaved, 0, frames * channels);
+            // Mono and stereo cover nearly every file and get loops without an inner one.
+            if (channels == 1) {
+                for (int f = 0; f < frames; f++) mono[f] = interleaved[f];
+            } else if (channels == 2) {
+                for (int f = 0; f < frames; f++) mono[f] = (interleaved[2 * f] + interleaved[2 * f + 1]) / 2;
+            } else {
+                for (int f = 0, i = 0; f < frames; f++) {
+                    int mixed = 0;
+                    for (int c = 0; c < channels; c++, i++) mixed += interleaved[i];
+                    mono[f] = mixed / channels;
+                }
+            }
+        }
+    }
+
+    private static final class Pcm24 extends Downmixer {
+        private final byte[] interleaved;
+        private ByteBuffer samples;
+
+        Pcm24(int channels, int maxFrames) {
+            super(channels, maxFrames);
+            interleaved = new byte[maxFrames * channels * 3];
+        }
+
+        @Override
+        void bind(ByteBuffer data) {
+            samples = data.slice();
+        }
+
+        @Override
+        void seek(int frame) {
+            samples.position(frame * channels * 3);
+        }
+
+        @Override
+        void read(int frames, int[] mono) {
+            samples.get(interleaved, 0, frames * channels * 3);
+            for (int f = 0, j = 0; f < frames; f++) {
+                int mixed = 0;
+                for (int c = 0; c < channels; c++, j += 3) {
+                    // Only the top two bytes matter on a 16-bit scale.
+                    mixed += (interleaved[j + 2] << 8) | (interleaved[j + 1] & 0xFF);
+                }
+                mono[f] = mixed / channels;
+            }
+        }
+    }
+
+    private static final class Pcm32 extends Downmixer {
+        private final int[] interleaved;
+        private IntBuffer samples;
+
+        Pcm32(int channels, int maxFrames) {
+            super(channels, maxFrames);
+            interleaved = new int[maxFrames * channels];
+        }
+
+        @Override
+        void bind(ByteBuffer data) {
+            samples = data.asIntBuffer();
+        }
+
+        @Override
+        void seek(int frame) {
+            samples.position(frame * channels);
+        }
+
+        @Override
+        void read(int frames, int[] mono) {
+            samples.get(interleaved, 0, frames * channels);
+            for (int f = 0, i = 0; f < frames; f++) {
+                int mixed = 0;
+                for (int c = 0; c < channels; c++, i++) mixed += interleaved[i] >> 16;
+                mono[f] = mixed / channels;
+            }
+        }
+    }
+
+    private static final class Float32 extends Downmixer {
+        private final float[] interleaved;
+        private final float scale;
+        private FloatBuffer samples;
+
+        Float32(int channels, int maxFrames) {
+            super(channels, maxFrames);
+            interleaved = new float[maxFrames * channels];
+            scale = 32767f / channels;
+        }
+
+        @Override
+        void bind(ByteBuffer data) {
+            samples = data.asFloatBuffer();
+        }
+
+        @Override
+        void seek(int frame) {
+            samples.position(frame * channels);
+        }
+
+        @Override
+        void read(int frames, int[] mono) {
+            samples.get(interleaved, 0, frames * channels);
+            for (int f = 0, i = 0; f < frames; f++) {
+                float mixed = 0f;
+                for (int c = 0; c < channels; c++, i++) mixed += interleaved[i];
+                mono[f] = (int) (mixed * scale);
+            }
+        }
+    }
+
+    private static final class Float64 extends Downmixer {
+        private final double[] interleaved;
+        private final double scale;
+        private DoubleBuffer samples;
+
+        Float64(int channels, int maxFrames) {
+            super(channels, maxFrames);
+            interleaved = new double[maxFrames * channels];
+            scale = 32767.0 / channels;
+        }
+
+        @Override
+        void bind(ByteBuffer data) {
+            samples = data.asDoubleBuffer();
+        }
+
+        @Override
+        void seek(int frame) {
+            samples.position(frame * channels);
+        }
+
+        @Override
+        void read(int frames, int[] mono) {
+            samples.get(interleaved, 0, frames * channels);
+            for (int f = 0, i = 0; f < frames; f++) {
+                double mixed = 0.0;
+                for (int c = 0; c < channels; c++, i++) mixed += interleaved[i];
+                mono[f] = (int) (mixed * scale);
+            }
+        }
+    }
+}
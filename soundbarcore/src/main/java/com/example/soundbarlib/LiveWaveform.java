@@ -0,0 +1,173 @@
+package com.example.soundbarlib;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Bars of audio that is still being recorded. A single producer thread, such as the one
+ * reading {@code AudioRecord}, {@linkplain #write writes} PCM chunks, which are folded into
+ * bars right away; any other thread can {@linkplain #readBars read} the newest bars without
+ * locking, e.g. once per display frame. The samples are summarized into a
+ * {@link PeakPyramid} along the way, so {@link #finish()} hands back the whole recording's
+ * waveform without analysing it again. Memory stays constant however long the recording is.
+ */
+public class LiveWaveform {
+
+    public static final int DEFAULT_BAR_MS = 50;
+
+    /** Newest bars kept for readers; a power of two, far more than any view shows. */
+    private static final int RING_BARS = 2048;
+    private static final int RING_MASK = RING_BARS - 1;
+    /**
+     * Frames summarized into the {@link PeakPyramid}, which counts them in an {@code int}:
+     * about 13.5 hours at 44.1 kHz. Bars keep coming after that, but {@link #finish()} only
+     * covers the start of the recording.
+     */
+    private static final long MAX_PYRAMID_FRAMES = Integer.MAX_VALUE;
+    /** Bars show the peak level over this range in decibels below full scale. */
+    private static final float RANGE_DB = 60f;
+
+    private final int sampleRate;
+    private final int channels;
+    private final int framesPerBar;
+    private final AtomicIntegerArray ring = new AtomicIntegerArray(RING_BARS);
+    /**
+     * Bars published to readers; the ring holds the last {@link #RING_BARS} of them. Each bar
+     * is published as soon as its slot is written, so the producer overwrites at most the one
+     * slot of bar {@code barsWritten} that readers cannot see yet.
+     */
+    private volatile long barsWritten;
+    private volatile long framesWritten;
+
+    // Only touched by the producer, then by finish().
+    private final BinAccumulator bins;
+    private final int[] mono = new int[4096];
+    private int barPeak;
+    private int barFrames;
+    private PeakPyramid finished;
+
+    public LiveWaveform(int sampleRate, int channels) {
+        this(sampleRate, channels, DEFAULT_BAR_MS);
+    }
+
+    /** Each bar covers {@code barMs} milliseconds of audio. */
+    public LiveWaveform(int sampleRate, int channels, int barMs) {
+        if (sampleRate <= 0 || channels <= 0 || barMs <= 0) {
+            throw new IllegalArgumentException("Invalid format " + sampleRate + " Hz, " + channels
+                    + " channels, " + barMs + " ms bars");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.framesPerBar = Math.max(1, (int) ((long) sampleRate * barMs / 1000));
+        this.bins = new BinAccumulator(PeakPyramid.FINE_BASE_FRAMES, PeakPyramid.MAX_BASE_BINS);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /** Milliseconds of audio each bar covers. */
+    public float getBarDurationMs() {
+        return framesPerBar * 1000f / sampleRate;
+    }
+
+    /** Length of the audio written so far. Safe to call from any thread. */
+    public long getDurationMs() {
+        return framesWritten * 1000 / sampleRate;
+    }
+
+    /** Bars completed so far. Safe to call from any thread. */
+    public long getBarCount() {
+        return barsWritten;
+    }
+
+    /**
+     * Appends {@code length} interleaved 16-bit samples, as read by
+     * {@code AudioRecord.read(short[], int, int)}. Must only be called from one thread at a
+     * time, and never after {@link #finish()}.
+     */
+    public void write(short[] samples, int offset, int length) {
+        if (finished != null) throw new IllegalStateException("Recording already finished");
+        int frames = length / channels;
+        for (int done = 0; done < frames; ) {
+            int count = Math.min(frames - done, mono.length);
+            int base = offset + done * channels;
+            if (channels == 1) {
+                for (int f = 0; f < count; f++) mono[f] = samples[base + f];
+            } else {
+                for (int f = 0, i = base; f < count; f++) {
+                    int mixed = 0;
+                    for (int c = 0; c < channels; c++, i++) mixed += samples[i];
+                    mono[f] = mixed / channels;
+                }
+            }
+            long room = MAX_PYRAMID_FRAMES - framesWritten - done;
+            if (room > 0) bins.add(mono, (int) Math.min(count, room));
+            foldBars(count);
+            done += count;
+        }
+        framesWritten += frames;
+    }
+
+    private void foldBars(int count) {
+        long written = barsWritten;
+        int peak = barPeak;
+        int filled = barFrames;
+        for (int f = 0; f < count; f++) {
+            peak = Math.max(peak, Math.abs(mono[f]));
+            if (++filled == framesPerBar) {
+                ring.lazySet((int) written & RING_MASK, levelFor(peak));
+                barsWritten = ++written;
+                peak = 0;
+                filled = 0;
+            }
+        }
+        barPeak = peak;
+        barFrames = filled;
+    }
+
+    /** Peak level of a bar, from 0 to 100 over the top {@link #RANGE_DB} decibels. */
+    private static int levelFor(int peak) {
+        if (peak == 0) return 0;
+        double db = 20 * Math.log10(peak / 32768.0);
+        return (int) Math.max(0, Math.min(100, (db + RANGE_DB) * 100 / RANGE_DB));
+    }
+
+    /**
+     * Copies the newest {@code levels.length} bars into {@code levels}, oldest first and
+     * right-aligned, so a recording that has fewer bars starts with zeros. At most
+     * {@code RING_BARS - 1}, i.e. 2047, bars are available; entries before them are 0 too.
+     * Never blocks the producer. Safe to call from any thread.
+     *
+     * @return the number of bars completed so far; the last entry of {@code levels} is that bar
+     */
+    public long readBars(byte[] levels) {
+        while (true) {
+            long end = barsWritten;
+            // One slot is always reserved for the bar the producer may be writing.
+            int count = (int) Math.min(Math.min(levels.length, RING_BARS - 1), end);
+            int pad = levels.length - count;
+            for (int i = 0; i < pad; i++) {
+                levels[i] = 0;
+            }
+            for (int i = 0; i < count; i++) {
+                levels[pad + i] = (byte) ring.get((int) (end - count + i) & RING_MASK);
+            }
+            // The producer has now written at most up to the slot of bar barsWritten, which
+            // held bar barsWritten - RING_BARS. Retry if that reached the oldest bar copied.
+            if (barsWritten - RING_BARS < end - count) return end;
+        }
+    }
+
+    /**
+     * Ends the recording and returns its waveform pyramid, which covers at most the first
+     * {@code Integer.MAX_VALUE} frames. Call it on the producer thread, or on a thread the
+     * producer's last write happens-before, e.g. after joining the recording thread. Later
+     * calls return the same pyramid.
+     */
+    public synchronized PeakPyramid finish() {
+        if (finished == null) {
+            finished = bins.finish(sampleRate);
+        }
+        return finished;
+    }
+}
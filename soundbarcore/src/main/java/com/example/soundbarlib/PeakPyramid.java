@@ -0,0 +1,296 @@
+package com.example.soundbarlib;
+
+/**
+ * Min/max/mean/RMS summaries of an audio file at power-of-two resolutions. Level 0 holds one
+ * bin per {@link #getBaseFrames()} frames and every level above halves the bin count, so a
+ * waveform of any width can be derived from the closest level without decoding again.
+ * <p>
+ * Sample values are downmixed to mono and expressed on a 16-bit scale.
+ */
+public class PeakPyramid {
+
+    /** Level 0 aims for at least this many bins so short files still get fine bars. */
+    private static final int TARGET_BASE_BINS = 4096;
+    /**
+     * Level 0 never has more bins than this, so a pyramid stays a few hundred KB however long
+     * the file is. Past it, bins grow beyond {@link #FINE_BASE_FRAMES} frames.
+     */
+    static final int MAX_BASE_BINS = 16384;
+    /** Frames per level-0 bin for files up to {@link #MAX_BASE_BINS} such bins long. */
+    static final int FINE_BASE_FRAMES = 256;
+    /** Bars are built from a few bins each so bar edges stay close to their exact position. */
+    private static final int BINS_PER_BAR = 4;
+
+    private final int sampleRate;
+    private final long durationMs;
+    private final int frameCount;
+    private final int baseFrames;
+
+    final short[][] min;
+    final short[][] max;
+    final float[][] meanAbs;
+    final float[][] rms;
+
+    /**
+     * Allocates an empty pyramid whose level 0 is to be filled by the caller before
+     * {@link #buildLevels()} derives the levels above it.
+     */
+    PeakPyramid(int sampleRate, long durationMs, int frameCount, int baseFrames) {
+        this.sampleRate = sampleRate;
+        this.durationMs = durationMs;
+        this.frameCount = frameCount;
+        this.baseFrames = baseFrames;
+
+        int levels = 1;
+        for (int bins = binCount(frameCount, baseFrames); bins > 1; bins = (bins + 1) / 2) {
+            levels++;
+        }
+        min = new short[levels][];
+        max = new short[levels][];
+        meanAbs = new float[levels][];
+        rms = new float[levels][];
+        int bins = binCount(frameCount, baseFrames);
+        for (int level = 0; level < levels; level++) {
+            min[level] = new short[bins];
+            max[level] = new short[bins];
+            meanAbs[level] = new float[bins];
+            rms[level] = new float[bins];
+            bins = (bins + 1) / 2;
+        }
+    }
+
+    /** Frames per level-0 bin for a file of {@code frameCount} frames: a power of two. */
+    static int baseFramesFor(long frameCount) {
+        long frames = Math.max(1, frameCount / TARGET_BASE_BINS);
+        long baseFrames = Math.min(FINE_BASE_FRAMES, Long.highestOneBit(frames));
+        while ((frameCount + baseFrames - 1) / baseFrames > MAX_BASE_BINS) {
+            baseFrames *= 2;
+        }
+        return (int) baseFrames;
+    }
+
+    private static int binCount(int frames, int framesPerBin) {
+        return Math.max(1, (int) (((long) frames + framesPerBin - 1) / framesPerBin));
+    }
+
+    /** Stores the summary of level-0 bin {@code bin}, computed over {@code count} frames. */
+    void setBase(int bin, int binMin, int binMax, long sumAbs, long sumSquares, int count) {
+        min[0][bin] = (short) Math.max(Short.MIN_VALUE, binMin);
+        max[0][bin] = (short) Math.min(Short.MAX_VALUE, binMax);
+        meanAbs[0][bin] = count > 0 ? (float) sumAbs / count : 0f;
+        rms[0][bin] = count > 0 ? (float) Math.sqrt((double) sumSquares / count) : 0f;
+    }
+
+    /** Derives every level above 0 by merging pairs of bins. */
+    void buildLevels() {
+        for (int level = 1; level < min.length; level++) {
+            int below = level - 1;
+            int belowBins = min[below].length;
+            for (int bin = 0; bin < min[level].length; bin++) {
+                int a = bin * 2;
+                int b = a + 1;
+                if (b >= belowBins) {
+                    min[level][bin] = min[below][a];
+                    max[level][bin] = max[below][a];
+                    meanAbs[level][bin] = meanAbs[below][a];
+                    rms[level][bin] = rms[below][a];
+                    continue;
+                }
+                // Only the last bin of a level can be partial, so weight by frame count.
+                float wa = binFrames(below, a);
+                float wb = binFrames(below, b);
+                float total = wa + wb;
+                min[level][bin] = (short) Math.min(min[below][a], min[below][b]);
+                max[level][bin] = (short) Math.max(max[below][a], max[below][b]);
+                meanAbs[level][bin] = (meanAbs[below][a] * wa + meanAbs[below][b] * wb) / total;
+                float ra = rms[below][a];
+                float rb = rms[below][b];
+                rms[level][bin] = (float) Math.sqrt((ra * ra * wa + rb * rb * wb) / total);
+            }
+        }
+    }
+
+    private int binFrames(int level, int bin) {
+        long size = (long) baseFrames << level;
+        return (int) Math.max(0, Math.min(size, frameCount - bin * size));
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getBaseFrames() {
+        return baseFrames;
+    }
+
+    public int getLevelCount() {
+        return min.length;
+    }
+
+    public int getBinCount(int level) {
+        return min[level].length;
+    }
+
+    /**
+     * Returns the coarsest level that still has a few bins per bar, or level 0 if none does.
+     */
+    public int levelFor(int bars) {
+        long wanted = (long) bars * BINS_PER_BAR;
+        int level = 0;
+        while (level + 1 < min.length && min[level + 1].length >= wanted) {
+            level++;
+        }
+        return level;
+    }
+
+    /** Number of bars {@link #toWaveform} actually produces when asked for {@code bars}. */
+    public int barCountFor(int bars) {
+        if (frameCount == 0) return 0;
+        return Math.max(1, Math.min(bars, min[levelFor(bars)].length));
+    }
+
+    /**
+     * First level-0 bin of bar {@code bar} out of {@code bars}, where {@code bars} is a value
+     * returned by {@link #barCountFor}. Bars end where the next one starts.
+     */
+    int barStartBin(int bar, int bars) {
+        int level = levelFor(bars);
+        long levelBin = (long) bar * min[level].length / bars;
+        return (int) Math.min(min[0].length, levelBin << level);
+    }
+
+    /** Frame-weighted mean absolute value of level-0 bins {@code [fromBin, toBin)}. */
+    float meanAbs(int fromBin, int toBin) {
+        float sum = 0f;
+        float weight = 0f;
+        for (int bin = fromBin; bin < toBin; bin++) {
+            float frames = binFrames(0, bin);
+            sum += meanAbs[0][bin] * frames;
+            weight += frames;
+        }
+        return weight > 0f ? sum / weight : 0f;
+    }
+
+    /** Derives {@link Waveform#METRIC_MEAN} bars; see {@link #toWaveform(int, int)}. */
+    public Waveform toWaveform(int bars) {
+        return toWaveform(bars, Waveform.METRIC_MEAN);
+    }
+
+    /**
+     * Derives {@code bars} bars (fewer if level 0 has fewer bins) of the given
+     * {@code Waveform.METRIC_} from the closest level. Each bar merges a bounded number of
+     * bins, so this is O(bars).
+     */
+    public Waveform toWaveform(int bars, int metric) {
+        checkMetric(metric);
+        boolean envelope = metric == Waveform.METRIC_ENVELOPE;
+        if (frameCount == 0) {
+            return new Waveform(new byte[0], envelope ? new byte[0] : null, metric, sampleRate,
+                    durationMs, 0, this);
+        }
+        int level = levelFor(bars);
+        int bins = min[level].length;
+        bars = Math.max(1, Math.min(bars, bins));
+
+        float[] high = new float[bars];
+        float[] low = envelope ? new float[bars] : null;
+        float maxAmp = 1f;
+        int start = 0;
+        for (int bar = 0; bar < bars; bar++) {
+            int end = (int) ((long) (bar + 1) * bins / bars);
+            high[bar] = barValue(level, start, end, metric, false);
+            maxAmp = Math.max(maxAmp, high[bar]);
+            if (envelope) {
+                low[bar] = barValue(level, start, end, metric, true);
+                maxAmp = Math.max(maxAmp, low[bar]);
+            }
+            start = end;
+        }
+
+        byte[] levels = new byte[bars];
+        byte[] lowLevels = envelope ? new byte[bars] : null;
+        for (int bar = 0; bar < bars; bar++) {
+            levels[bar] = WaveformGenerator.normalize(high[bar], maxAmp);
+            if (envelope) lowLevels[bar] = WaveformGenerator.normalize(low[bar], maxAmp);
+        }
+        return new Waveform(levels, lowLevels, metric, sampleRate, durationMs, maxAmp, this);
+    }
+
+    /**
+     * Fills {@code levels} with bars {@code [fromBar, fromBar + levels.length)} of the
+     * {@code totalBars}-bar waveform {@link #toWaveform(int, int)} would derive, so a zoomed
+     * view only pays for the bars it shows. Bars are normalized against {@code peak}, on the
+     * same scale as {@link Waveform#getPeak()}, and clipped at 100; bars past the end are 0.
+     * Given the waveform's unrounded peak, the bars are identical to the ones
+     * {@link #toWaveform(int, int)} derives.
+     *
+     * @param totalBars a value returned by {@link #barCountFor}
+     * @param lowLevels receives the negative peaks for {@link Waveform#METRIC_ENVELOPE};
+     *                  ignored, and may be {@code null}, for other metrics
+     */
+    public void fillBars(int totalBars, int fromBar, int metric, float peak, byte[] levels, byte[] lowLevels) {
+        checkMetric(metric);
+        boolean envelope = metric == Waveform.METRIC_ENVELOPE;
+        int level = levelFor(totalBars);
+        long bins = min[level].length;
+        float reference = Math.max(1f, peak);
+        for (int i = 0; i < levels.length; i++) {
+            int bar = fromBar + i;
+            byte high = 0;
+            byte low = 0;
+            if (bar >= 0 && bar < totalBars) {
+                int start = (int) (bar * bins / totalBars);
+                int end = (int) ((bar + 1) * bins / totalBars);
+                high = WaveformGenerator.normalize(barValue(level, start, end, metric, false), reference);
+                if (envelope) {
+                    low = WaveformGenerator.normalize(barValue(level, start, end, metric, true), reference);
+                }
+            }
+            levels[i] = high;
+            if (envelope) lowLevels[i] = low;
+        }
+    }
+
+    /**
+     * The raw value of the bar made of bins {@code [start, end)} of {@code level}. For
+     * {@link Waveform#METRIC_ENVELOPE}, {@code negative} selects the negative peak.
+     */
+    private float barValue(int level, int start, int end, int metric, boolean negative) {
+        if (metric == Waveform.METRIC_MEAN || metric == Waveform.METRIC_RMS) {
+            boolean squared = metric == Waveform.METRIC_RMS;
+            float[] values = squared ? rms[level] : meanAbs[level];
+            float sum = 0f;
+            float weight = 0f;
+            for (int bin = start; bin < end; bin++) {
+                float frames = binFrames(level, bin);
+                float value = values[bin];
+                sum += (squared ? value * value : value) * frames;
+                weight += frames;
+            }
+            float mean = weight > 0f ? sum / weight : 0f;
+            return squared ? (float) Math.sqrt(mean) : mean;
+        }
+        int barMin = 0;
+        int barMax = 0;
+        for (int bin = start; bin < end; bin++) {
+            barMin = Math.min(barMin, min[level][bin]);
+            barMax = Math.max(barMax, max[level][bin]);
+        }
+        if (metric == Waveform.METRIC_PEAK) return Math.max(barMax, -barMin);
+        return negative ? -barMin : barMax;
+    }
+
+    private static void checkMetric(int metric) {
+        if (metric < Waveform.METRIC_MEAN || metric > Waveform.METRIC_ENVELOPE) {
+            throw new IllegalArgumentException("Unknown metric " + metric);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.soundbarlib;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Format and data location of a RIFF/WAVE file, found by walking its chunks.
+ * Only chunk headers and the {@code fmt } body are read; the sample data is never touched.
+ */
+public class WavHeader {
+
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_IEEE_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private static final int RIFF = 0x46464952; // "RIFF"
+    private static final int WAVE = 0x45564157; // "WAVE"
+    private static final int FMT = 0x20746d66;  // "fmt "
+    private static final int DATA = 0x61746164; // "data"
+
+    public final int format;
+    public final int channels;
+    public final int sampleRate;
+    public final int byteRate;
+    public final int blockAlign;
+    public final int bitsPerSample;
+    /** Absolute position of the first sample in the channel. */
+    public final long dataOffset;
+    /** Length of the sample data in bytes, rounded down to whole frames. */
+    public final long dataLength;
+
+    private WavHeader(int format, int channels, int sampleRate, int byteRate, int blockAlign,
+                      int bitsPerSample, long dataOffset, long dataLength) {
+        this.format = format;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.byteRate = byteRate;
+        this.blockAlign = blockAlign;
+        this.bitsPerSample = bitsPerSample;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    public long getFrameCount() {
+        return dataLength / blockAlign;
+    }
+
+    public int getBytesPerSample() {
+        return blockAlign / channels;
+    }
+
+    public static WavHeader parse(FileChannel channel) throws IOException {
+        return parse(channel, 0, channel.size());
+    }
+
+    /**
+     * Parses the WAVE file that occupies {@code length} bytes of {@code channel} starting at
+     * {@code offset}, e.g. a raw resource inside an APK.
+     */
+    public static WavHeader parse(FileChannel channel, long offset, long length) throws IOException {
+        long end = offset + length;
+        ByteBuffer buffer = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+
+        readFully(channel, buffer, offset, 12);
+        if (buffer.getInt(0) != RIFF || buffer.getInt(8) != WAVE) {
+            throw new IOException("Not a RIFF/WAVE file");
+        }
+
+        int format = 0, channels = 0, sampleRate = 0, byteRate = 0, blockAlign = 0, bits = 0;
+        boolean hasFormat = false;
+        long position = offset + 12;
+
+        while (position + 8 <= end) {
+            readFully(channel, buffer, position, 8);
+            int id = buffer.getInt(0);
+            long size = buffer.getInt(4) & 0xFFFFFFFFL;
+            long body = position + 8;
+
+            if (id == FMT) {
+                if (size < 16) throw new IOException("Truncated fmt chunk");
+                readFully(channel, buffer, body, (int) Math.min(size, buffer.capacity()));
+                format = buffer.getShort(0) & 0xFFFF;
+                channels = buffer.getShort(2) & 0xFFFF;
+                sampleRate = buffer.getInt(4);
+                byteRate = buffer.getInt(8);
+                blockAlign = buffer.getShort(12) & 0xFFFF;
+                bits = buffer.getShort(14) & 0xFFFF;
+                if (format == FORMAT_EXTENSIBLE && size >= 26) {
+                    // The first two bytes of the sub-format GUID hold the real format tag.
+                    format = buffer.getShort(24) & 0xFFFF;
+                }
+                hasFormat = true;
+            } else if (id == DATA) {
+                if (!hasFormat) throw new IOException("data chunk before fmt chunk");
+                if (channels == 0 || blockAlign == 0) throw new IOException("Invalid fmt chunk");
+                // Streaming writers leave the size at 0 or 0xFFFFFFFF; trust the file length then.
+                long available = end - body;
+                long dataLength = size == 0 || size > available ? available : size;
+                dataLength -= dataLength % blockAlign;
+                return new WavHeader(format, channels, sampleRate, byteRate, blockAlign, bits,
+                        body, dataLength);
+            }
+            // Chunks are word aligned.
+            position = body + size + (size & 1);
+        }
+        throw new IOException("No data chunk");
+    }
+
+    /**
+     * Whether the {@code length} bytes of {@code channel} at {@code offset} start like a
+     * RIFF/WAVE file. Other files need a {@link AudioSampleSource} that can decode them.
+     */
+    public static boolean isWave(FileChannel channel, long offset, long length) throws IOException {
+        if (length < 12) return false;
+        ByteBuffer buffer = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            readFully(channel, buffer, offset, 12);
+        } catch (EOFException e) {
+            return false;
+        }
+        return buffer.getInt(0) == RIFF && buffer.getInt(8) == WAVE;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.soundbarlib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the samples of a WAV file in fixed-size chunks. {@link WaveformGenerator#buildPyramid(File)}
+ * maps WAV files instead, which is faster; this source is for code written against any
+ * {@link AudioSampleSource}.
+ */
+public class WavSampleSource implements AudioSampleSource {
+
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private final FileInputStream stream;
+    private final FileChannel channel;
+    private final WavHeader header;
+    private final ByteBuffer buffer;
+    private long position;
+
+    public WavSampleSource(File file) throws IOException {
+        stream = new FileInputStream(file);
+        channel = stream.getChannel();
+        try {
+            header = WavHeader.parse(channel);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        int frames = Math.max(1, CHUNK_BYTES / header.blockAlign);
+        buffer = ByteBuffer.allocate(frames * header.blockAlign).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return header.sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return header.channels;
+    }
+
+    @Override
+    public int getFormat() {
+        return header.format;
+    }
+
+    @Override
+    public int getBitsPerSample() {
+        return header.getBytesPerSample() * 8;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return header.getFrameCount();
+    }
+
+    @Override
+    public ByteBuffer read() throws IOException {
+        long remaining = header.dataLength - position;
+        if (remaining <= 0) return null;
+        buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, header.dataOffset + position + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+        // A truncated file can end mid-frame.
+        buffer.limit(buffer.limit() - buffer.limit() % header.blockAlign);
+        if (!buffer.hasRemaining()) return null;
+        position += buffer.remaining();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.soundbarlib;
+
+/**
+ * Bar heights of an audio file, one byte per bar on a 0-100 scale, plus the metadata needed
+ * to draw and time them. Instances are immutable and cheap to keep around.
+ */
+public class Waveform {
+
+    /** Mean absolute value of each bar, the default. */
+    public static final int METRIC_MEAN = 0;
+    /** Root mean square of each bar, closer to perceived loudness. */
+    public static final int METRIC_RMS = 1;
+    /** Largest absolute sample of each bar. */
+    public static final int METRIC_PEAK = 2;
+    /**
+     * Signed extremes of each bar: {@link #getLevel} is the positive peak and
+     * {@link #getLowLevel} the negative one, so asymmetric audio shows as such.
+     */
+    public static final int METRIC_ENVELOPE = 3;
+
+    final byte[] levels;
+    /** Negative peaks for {@link #METRIC_ENVELOPE}, otherwise {@code null}. */
+    final byte[] lowLevels;
+    private final int metric;
+    private final int sampleRate;
+    private final long durationMs;
+    private final float peak;
+    private final PeakPyramid pyramid;
+
+    /**
+     * @param levels     bar heights in the range 0-100; the array is not copied
+     * @param sampleRate sample rate of the source, in Hz
+     * @param durationMs duration of the source
+     * @param peak       raw bar value, on a 16-bit scale, that was normalized to 100
+     */
+    public Waveform(byte[] levels, int sampleRate, long durationMs, int peak) {
+        this(levels, null, METRIC_MEAN, sampleRate, durationMs, peak, null);
+    }
+
+    Waveform(byte[] levels, byte[] lowLevels, int metric, int sampleRate, long durationMs, float peak,
+             PeakPyramid pyramid) {
+        this.levels = levels;
+        this.lowLevels = lowLevels;
+        this.metric = metric;
+        this.sampleRate = sampleRate;
+        this.durationMs = durationMs;
+        this.peak = peak;
+        this.pyramid = pyramid;
+    }
+
+    public int getBarCount() {
+        return levels.length;
+    }
+
+    public int getLevel(int bar) {
+        return levels[bar];
+    }
+
+    /**
+     * Height of bar {@code bar} below the center line, 0-100. Only differs from
+     * {@link #getLevel} for {@link #METRIC_ENVELOPE}.
+     */
+    public int getLowLevel(int bar) {
+        return lowLevels != null ? lowLevels[bar] : levels[bar];
+    }
+
+    /** One of the {@code METRIC_} constants. */
+    public int getMetric() {
+        return metric;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public int getPeak() {
+        return Math.round(peak);
+    }
+
+    /**
+     * The unrounded {@link #getPeak()}, so bars derived later with
+     * {@link PeakPyramid#fillBars} match these ones exactly.
+     */
+    float getExactPeak() {
+        return peak;
+    }
+
+    /** The pyramid this waveform was derived from, or {@code null} if it was built directly. */
+    public PeakPyramid getPyramid() {
+        return pyramid;
+    }
+
+    /**
+     * Returns this waveform with {@code bars} bars, derived from its pyramid without touching
+     * the source file. Waveforms without a pyramid are returned unchanged.
+     */
+    public Waveform withBarCount(int bars) {
+        if (pyramid == null || bars == levels.length) return this;
+        return pyramid.toWaveform(bars, metric);
+    }
+
+    /**
+     * Returns this waveform drawn with another {@code METRIC_} constant, derived from its
+     * pyramid. Waveforms without a pyramid are returned unchanged.
+     */
+    public Waveform withMetric(int metric) {
+        if (pyramid == null || metric == this.metric) return this;
+        return pyramid.toWaveform(levels.length, metric);
+    }
+}
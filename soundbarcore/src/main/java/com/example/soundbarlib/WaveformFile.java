@@ -0,0 +1,151 @@
+package com.example.soundbarlib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary form of a {@link PeakPyramid}. Only level 0 is stored; the levels above it
+ * are cheap to rebuild on read.
+ * <pre>
+ * int    magic "SBWF"
+ * int    version
+ * int    sampleRate
+ * long   durationMs
+ * int    frameCount
+ * int    baseFrames
+ * int    bins
+ * short  min[bins]
+ * short  max[bins]
+ * float  meanAbs[bins]
+ * float  rms[bins]
+ * long   CRC32 of everything above
+ * </pre>
+ * All values are little-endian.
+ */
+public class WaveformFile {
+
+    static final int MAGIC = 0x46574253; // "SBWF"
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4 + 4 + 4;
+    private static final int BYTES_PER_BIN = 2 + 2 + 4 + 4;
+    private static final int CHECKSUM_SIZE = 8;
+    private static final int MAX_SIZE = HEADER_SIZE + PeakPyramid.MAX_BASE_BINS * BYTES_PER_BIN + CHECKSUM_SIZE;
+
+    public static int sizeOf(PeakPyramid pyramid) {
+        return HEADER_SIZE + pyramid.getBinCount(0) * BYTES_PER_BIN + CHECKSUM_SIZE;
+    }
+
+    public static void write(PeakPyramid pyramid, FileChannel channel) throws IOException {
+        ByteBuffer buffer = encode(pyramid);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** The bytes {@link #write} would produce, e.g. to put a pyramid into a {@code Bundle}. */
+    public static byte[] toByteArray(PeakPyramid pyramid) {
+        return encode(pyramid).array();
+    }
+
+    /**
+     * Reads a pyramid from bytes produced by {@link #toByteArray}.
+     *
+     * @throws WaveformFormatException if the data is truncated, corrupt, or from another
+     *                                 format version
+     */
+    public static PeakPyramid fromByteArray(byte[] bytes) throws WaveformFormatException {
+        return decode(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private static ByteBuffer encode(PeakPyramid pyramid) {
+        int bins = pyramid.getBinCount(0);
+        ByteBuffer buffer = ByteBuffer.allocate(sizeOf(pyramid)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(pyramid.getSampleRate())
+                .putLong(pyramid.getDurationMs())
+                .putInt(pyramid.getFrameCount())
+                .putInt(pyramid.getBaseFrames())
+                .putInt(bins);
+        int position = buffer.position();
+        buffer.asShortBuffer().put(pyramid.min[0]);
+        position += bins * 2;
+        buffer.position(position);
+        buffer.asShortBuffer().put(pyramid.max[0]);
+        position += bins * 2;
+        buffer.position(position);
+        buffer.asFloatBuffer().put(pyramid.meanAbs[0]);
+        position += bins * 4;
+        buffer.position(position);
+        buffer.asFloatBuffer().put(pyramid.rms[0]);
+        position += bins * 4;
+        buffer.position(position);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, position);
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads a pyramid written by {@link #write}.
+     *
+     * @throws WaveformFormatException if the data is truncated, corrupt, or from another
+     *                                 format version
+     */
+    public static PeakPyramid read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE + CHECKSUM_SIZE || size > MAX_SIZE) {
+            throw new WaveformFormatException("Bad waveform file size " + size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new WaveformFormatException("Truncated waveform file");
+        }
+        buffer.flip();
+        return decode(buffer);
+    }
+
+    private static PeakPyramid decode(ByteBuffer buffer) throws WaveformFormatException {
+        int size = buffer.remaining();
+        if (size < HEADER_SIZE + CHECKSUM_SIZE) throw new WaveformFormatException("Bad waveform file size " + size);
+        if (buffer.getInt() != MAGIC) throw new WaveformFormatException("Not a waveform file");
+        int version = buffer.getInt();
+        if (version != VERSION) throw new WaveformFormatException("Unsupported waveform version " + version);
+        int sampleRate = buffer.getInt();
+        long durationMs = buffer.getLong();
+        int frameCount = buffer.getInt();
+        int baseFrames = buffer.getInt();
+        int bins = buffer.getInt();
+        // Checked before anything is allocated, so a corrupt header cannot ask for huge arrays.
+        if (frameCount <= 0 || baseFrames <= 0 || Integer.bitCount(baseFrames) != 1
+                || ((long) frameCount + baseFrames - 1) / baseFrames != bins || bins > PeakPyramid.MAX_BASE_BINS
+                || (long) bins * BYTES_PER_BIN + HEADER_SIZE + CHECKSUM_SIZE != size) {
+            throw new WaveformFormatException("Corrupt waveform header");
+        }
+
+        int dataEnd = size - CHECKSUM_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, dataEnd);
+        if (buffer.getLong(dataEnd) != crc.getValue()) throw new WaveformFormatException("Waveform checksum mismatch");
+
+        PeakPyramid pyramid = new PeakPyramid(sampleRate, durationMs, frameCount, baseFrames);
+        int position = buffer.position();
+        buffer.asShortBuffer().get(pyramid.min[0]);
+        position += bins * 2;
+        buffer.position(position);
+        buffer.asShortBuffer().get(pyramid.max[0]);
+        position += bins * 2;
+        buffer.position(position);
+        buffer.asFloatBuffer().get(pyramid.meanAbs[0]);
+        position += bins * 4;
+        buffer.position(position);
+        buffer.asFloatBuffer().get(pyramid.rms[0]);
+        pyramid.buildLevels();
+        return pyramid;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.soundbarlib;
+
+import java.io.IOException;
+
+/**
+ * Thrown when data handed to {@link WaveformFile} is not a valid waveform file: truncated,
+ * corrupt, or from another format version. Other {@link IOException}s mean the data could
+ * not be read, not that it is bad.
+ */
+public class WaveformFormatException extends IOException {
+
+    public WaveformFormatException(String message) {
+        super(message);
+    }
+}
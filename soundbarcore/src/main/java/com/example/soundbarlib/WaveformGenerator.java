@@ -0,0 +1,316 @@
+package com.example.soundbarlib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class WaveformGenerator {
+
+    private static final Logger LOG = Logger.getLogger(WaveformGenerator.class.getName());
+
+    private static final int NOISE_THRESHOLD = 5;
+    /** Level-0 bins decoded between two checks for cancellation, and per parallel segment. */
+    private static final int CHUNK_BINS = 1024;
+    /** Frames downmixed at a time from an {@link AudioSampleSource} chunk. */
+    private static final int STREAM_FRAMES = 4096;
+
+    /**
+     * Receives bars while {@link #buildPyramid(File, int, ProgressListener)} is still decoding.
+     */
+    public interface ProgressListener {
+        /**
+         * Called on the decoding thread, left to right, each time bars {@code [fromBar, toBar)}
+         * are final. {@code raw} has one entry per bar holding its unnormalized mean absolute
+         * value on a 16-bit scale; entries never change once reported. The bars match the
+         * ones {@link PeakPyramid#toWaveform} derives from the finished pyramid.
+         */
+        void onBars(float[] raw, int fromBar, int toBar);
+    }
+
+    /**
+     * The levels {@link #analyze} returns, boxed; an empty list if {@code wavFile} cannot be
+     * decoded.
+     */
+    public static List<Integer> generateFromWav(File wavFile, int targetBarsCount) {
+        List<Integer> finalAmplitudes = new ArrayList<>();
+        try {
+            Waveform waveform = analyze(wavFile, targetBarsCount);
+            for (byte level : waveform.levels) {
+                finalAmplitudes.add((int) level);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not decode " + wavFile, e);
+        }
+        return finalAmplitudes;
+    }
+
+    /**
+     * Decodes {@code wavFile} into {@code barCount} bars (fewer for very short files). The
+     * result keeps its {@link PeakPyramid}, so it can be re-binned without decoding again.
+     */
+    public static Waveform analyze(File wavFile, int barCount) throws IOException {
+        return buildPyramid(wavFile).toWaveform(barCount);
+    }
+
+    /**
+     * Decodes {@code wavFile} once into a {@link PeakPyramid}.
+     *
+     * @throws InterruptedIOException if the calling thread is interrupted while decoding
+     */
+    public static PeakPyramid buildPyramid(File wavFile) throws IOException {
+        return buildPyramid(wavFile, 0, null);
+    }
+
+    /**
+     * Decodes {@code wavFile} into a {@link PeakPyramid}, reporting {@code barCount} bars to
+     * {@code listener} as they are completed, so a view can draw long files progressively.
+     *
+     * @throws InterruptedIOException if the calling thread is interrupted while decoding
+     */
+    public static PeakPyramid buildPyramid(File wavFile, int barCount, ProgressListener listener)
+            throws IOException {
+        return decode(wavFile, barCount, listener, null);
+    }
+
+    /**
+     * Decodes {@code wavFile} on the common {@link ForkJoinPool}; see
+     * {@link #buildPyramidParallel(File, Executor)}.
+     */
+    public static PeakPyramid buildPyramidParallel(File wavFile) throws IOException {
+        return buildPyramidParallel(wavFile, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decodes {@code wavFile} by splitting its level-0 bins into segments that run on
+     * {@code executor} and fill disjoint parts of the pyramid. The result is identical to
+     * {@link #buildPyramid(File)}. The calling thread only waits, so it must not be one the
+     * executor needs to make progress.
+     *
+     * @throws InterruptedIOException if the calling thread is interrupted while waiting
+     */
+    public static PeakPyramid buildPyramidParallel(File wavFile, Executor executor) throws IOException {
+        return decode(wavFile, 0, null, executor);
+    }
+
+    /**
+     * Decodes the WAVE file that occupies {@code length} bytes of {@code channel} starting at
+     * {@code offset}, such as a raw resource inside an APK, without copying it. Progress is
+     * reported as in {@link #buildPyramid(File, int, ProgressListener)}; {@code listener}
+     * may be {@code null}. The channel is left open.
+     *
+     * @throws InterruptedIOException if the calling thread is interrupted while decoding
+     */
+    public static PeakPyramid buildPyramid(FileChannel channel, long offset, long length, int barCount,
+                                           ProgressListener listener) throws IOException {
+        return decode(channel, offset, length, barCount, listener, null);
+    }
+
+    /**
+     * Decodes everything {@code source} delivers into a {@link PeakPyramid}, one chunk at a
+     * time, so compressed audio never needs a temporary file. The bins are sized from the
+     * source's frame count estimate, and the duration comes from the frames actually decoded.
+     * The source is left open.
+     *
+     * @throws InterruptedIOException if the calling thread is interrupted while decoding
+     */
+    public static PeakPyramid buildPyramid(AudioSampleSource source) throws IOException {
+        int channels = source.getChannelCount();
+        int bytesPerSample = (source.getBitsPerSample() + 7) / 8;
+        int frameSize = channels * bytesPerSample;
+        Downmixer downmixer = Downmixer.create(source.getFormat(), bytesPerSample, channels, STREAM_FRAMES);
+        long estimate = source.getFrameCount();
+        // A wrong estimate only costs a merge of neighbouring bins.
+        BinAccumulator bins = new BinAccumulator(
+                estimate > 0 ? PeakPyramid.baseFramesFor(estimate) : PeakPyramid.FINE_BASE_FRAMES,
+                PeakPyramid.MAX_BASE_BINS);
+        int[] mono = new int[STREAM_FRAMES];
+        ByteBuffer chunk;
+        while ((chunk = source.read()) != null) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Waveform analysis cancelled");
+            }
+            downmixer.bind(chunk.order(ByteOrder.LITTLE_ENDIAN));
+            for (int left = chunk.remaining() / frameSize; left > 0; ) {
+                int count = Math.min(left, STREAM_FRAMES);
+                downmixer.read(count, mono);
+                bins.add(mono, count);
+                left -= count;
+            }
+        }
+        return bins.finish(source.getSampleRate());
+    }
+
+    private static PeakPyramid decode(File wavFile, int barCount, ProgressListener listener,
+                                      Executor executor) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(wavFile);
+             FileChannel channel = inputStream.getChannel()) {
+            return decode(channel, 0, channel.size(), barCount, listener, executor);
+        }
+    }
+
+    /**
+     * Decodes the data chunk {@code header} describes, for callers that parsed the header
+     * themselves; see {@link #buildPyramid(FileChannel, long, long, int, ProgressListener)}.
+     */
+    static PeakPyramid buildPyramid(FileChannel channel, WavHeader header, int barCount,
+                                    ProgressListener listener) throws IOException {
+        return decode(channel, header, barCount, listener, null);
+    }
+
+    private static PeakPyramid decode(FileChannel channel, long offset, long length, int barCount,
+                                      ProgressListener listener, Executor executor) throws IOException {
+        return decode(channel, WavHeader.parse(channel, offset, length), barCount, listener, executor);
+    }
+
+    private static PeakPyramid decode(FileChannel channel, WavHeader header, int barCount,
+                                      ProgressListener listener, Executor executor) throws IOException {
+        // Exact to the millisecond, and covering the whole data chunk even past the mapping limit.
+        long durationMs = header.sampleRate > 0
+                ? (header.getFrameCount() * 1000 + header.sampleRate / 2) / header.sampleRate : 0;
+
+        // A single mapping is limited to 2 GB, which is above any practical WAV anyway.
+        long mapLength = Math.min(header.dataLength,
+                Integer.MAX_VALUE - Integer.MAX_VALUE % header.blockAlign);
+        int frames = (int) (mapLength / header.blockAlign);
+        PeakPyramid pyramid = new PeakPyramid(header.sampleRate, durationMs, frames,
+                PeakPyramid.baseFramesFor(frames));
+        if (frames > 0) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, header.dataOffset, mapLength);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            if (executor != null) {
+                summarizeParallel(data, header, pyramid, executor);
+            } else {
+                summarizeSequential(data, header, pyramid, barCount, listener);
+            }
+        }
+        pyramid.buildLevels();
+        return pyramid;
+    }
+
+    private static void summarizeSequential(ByteBuffer data, WavHeader header, PeakPyramid pyramid,
+                                            int barCount, ProgressListener listener) throws IOException {
+        int bins = pyramid.getBinCount(0);
+        int bars = listener != null ? pyramid.barCountFor(barCount) : 0;
+        float[] raw = new float[bars];
+        int reported = 0;
+        for (int from = 0; from < bins; from += CHUNK_BINS) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Waveform analysis cancelled");
+            }
+            int to = Math.min(bins, from + CHUNK_BINS);
+            summarize(data, header, pyramid, from, to);
+            if (listener != null) {
+                reported = reportBars(pyramid, raw, reported, to, listener);
+            }
+        }
+    }
+
+    private static void summarizeParallel(ByteBuffer data, WavHeader header, PeakPyramid pyramid,
+                                          Executor executor) throws IOException {
+        int bins = pyramid.getBinCount(0);
+        List<FutureTask<Void>> segments = new ArrayList<>(bins / CHUNK_BINS + 1);
+        try {
+            for (int from = 0; from < bins; from += CHUNK_BINS) {
+                int segmentFrom = from;
+                int segmentTo = Math.min(bins, from + CHUNK_BINS);
+                // Buffer views are not thread-safe, and duplicates do not keep the byte order.
+                ByteBuffer segmentData = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                FutureTask<Void> segment = new FutureTask<>(() -> {
+                    summarize(segmentData, header, pyramid, segmentFrom, segmentTo);
+                    return null;
+                });
+                segments.add(segment);
+                executor.execute(segment);
+            }
+            for (FutureTask<Void> segment : segments) {
+                segment.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waveform analysis cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        } finally {
+            for (FutureTask<Void> segment : segments) {
+                segment.cancel(false);
+            }
+        }
+    }
+
+    /** Reports every bar that lies entirely within the first {@code binsDone} bins. */
+    private static int reportBars(PeakPyramid pyramid, float[] raw, int reported, int binsDone,
+                                  ProgressListener listener) {
+        int bars = raw.length;
+        int bar = reported;
+        while (bar < bars) {
+            int end = bar + 1 < bars ? pyramid.barStartBin(bar + 1, bars) : pyramid.getBinCount(0);
+            if (end > binsDone) break;
+            raw[bar] = pyramid.meanAbs(pyramid.barStartBin(bar, bars), end);
+            bar++;
+        }
+        if (bar > reported) listener.onBars(raw, reported, bar);
+        return bar;
+    }
+
+    static byte normalize(float average, float maxAmp) {
+        float normalized = average / maxAmp;
+        int scaled = Math.min(100, (int) (normalized * 100));
+        return (byte) (scaled < NOISE_THRESHOLD ? 0 : scaled);
+    }
+
+    /**
+     * Fills level-0 bins {@code [fromBin, toBin)} of {@code pyramid} from the mapped data
+     * chunk in a single pass that yields every metric at once. Each bin is downmixed to mono
+     * on a 16-bit scale and reduced by {@link #accumulate}; both steps are plain array loops
+     * the JIT can unroll and vectorize.
+     */
+    private static void summarize(ByteBuffer data, WavHeader header, PeakPyramid pyramid,
+                                  int fromBin, int toBin) throws IOException {
+        int binFrames = pyramid.getBaseFrames();
+        int frames = pyramid.getFrameCount();
+        Downmixer downmixer = Downmixer.create(header.format, header.getBytesPerSample(),
+                header.channels, binFrames);
+        downmixer.bind(data);
+        int[] mono = new int[binFrames];
+        for (int bin = fromBin; bin < toBin; bin++) {
+            int start = bin * binFrames;
+            int count = Math.min(frames, start + binFrames) - start;
+            downmixer.seek(start);
+            downmixer.read(count, mono);
+            accumulate(pyramid, bin, mono, count);
+        }
+    }
+
+    /**
+     * Min, max, sum of absolute values and sum of squares of {@code values[0, count)}, stored
+     * as level-0 bin {@code bin}. Values are on a 16-bit scale.
+     */
+    private static void accumulate(PeakPyramid out, int bin, int[] values, int count) {
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        long sumAbs = 0;
+        long sumSquares = 0;
+        for (int i = 0; i < count; i++) {
+            int value = values[i];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sumAbs += Math.abs(value);
+            sumSquares += (long) value * value;
+        }
+        out.setBase(bin, min, max, sumAbs, sumSquares, count);
+    }
+}
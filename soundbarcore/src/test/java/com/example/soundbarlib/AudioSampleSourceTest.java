@@ -0,0 +1,152 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link WaveformGenerator#buildPyramid(AudioSampleSource)} yields the same
+ * pyramid as mapping the WAV file, whatever the chunk sizes.
+ */
+public class AudioSampleSourceTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    @Test
+    public void streamedChunks_matchMappedWav() throws IOException {
+        short[] samples = stereoTone(SAMPLE_RATE * 3 + 123);
+        File wav = writeWav(samples);
+        try {
+            PeakPyramid mapped = WaveformGenerator.buildPyramid(wav);
+            // Chunk sizes that straddle bin boundaries.
+            PeakPyramid streamed = WaveformGenerator.buildPyramid(
+                    new FakeSource(samples, samples.length / CHANNELS, 1000, 37, 4096));
+            assertSamePyramid(mapped, streamed);
+
+            try (WavSampleSource source = new WavSampleSource(wav)) {
+                assertSamePyramid(mapped, WaveformGenerator.buildPyramid(source));
+            }
+        } finally {
+            wav.delete();
+        }
+    }
+
+    @Test
+    public void unknownLength_usesFramesDecoded() throws IOException {
+        short[] samples = stereoTone(SAMPLE_RATE / 2);
+        PeakPyramid pyramid = WaveformGenerator.buildPyramid(new FakeSource(samples, -1, 777));
+
+        assertEquals(SAMPLE_RATE / 2, pyramid.getFrameCount());
+        assertEquals(500, pyramid.getDurationMs());
+        assertTrue(pyramid.toWaveform(10).levels[4] > 90);
+    }
+
+    @Test
+    public void emptySource_givesNoBars() throws IOException {
+        PeakPyramid pyramid = WaveformGenerator.buildPyramid(new FakeSource(new short[0], 0, 512));
+
+        assertEquals(0, pyramid.getFrameCount());
+        assertEquals(0, pyramid.getDurationMs());
+        assertEquals(0, pyramid.toWaveform(10).levels.length);
+    }
+
+    private static void assertSamePyramid(PeakPyramid expected, PeakPyramid actual) {
+        assertEquals(expected.getFrameCount(), actual.getFrameCount());
+        assertEquals(expected.getDurationMs(), actual.getDurationMs());
+        assertEquals(expected.getBaseFrames(), actual.getBaseFrames());
+        assertTrue(Arrays.deepEquals(expected.min, actual.min));
+        assertTrue(Arrays.deepEquals(expected.max, actual.max));
+        assertTrue(Arrays.deepEquals(expected.meanAbs, actual.meanAbs));
+        assertTrue(Arrays.deepEquals(expected.rms, actual.rms));
+    }
+
+    /** A 440 Hz full-scale tone, slightly quieter on the right channel. */
+    private static short[] stereoTone(int frames) {
+        short[] samples = new short[frames * CHANNELS];
+        for (int f = 0; f < frames; f++) {
+            double value = Math.sin(2 * Math.PI * 440 * f / SAMPLE_RATE);
+            samples[2 * f] = (short) (value * 32767);
+            samples[2 * f + 1] = (short) (value * 30000);
+        }
+        return samples;
+    }
+
+    private static File writeWav(short[] samples) throws IOException {
+        int dataLength = samples.length * 2;
+        ByteBuffer buffer = ByteBuffer.allocate(44 + dataLength).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(36 + dataLength).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16).putShort((short) WavHeader.FORMAT_PCM)
+                .putShort((short) CHANNELS).putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * CHANNELS * 2)
+                .putShort((short) (CHANNELS * 2)).putShort((short) 16);
+        buffer.put("data".getBytes()).putInt(dataLength);
+        buffer.asShortBuffer().put(samples);
+
+        File file = File.createTempFile("tone", ".wav");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buffer.array());
+        }
+        return file;
+    }
+
+    /** Delivers 16-bit stereo samples in chunks of the given frame counts, cycling through them. */
+    private static class FakeSource implements AudioSampleSource {
+        private final ByteBuffer data;
+        private final long frameCount;
+        private final int[] chunkFrames;
+        private int chunk;
+
+        FakeSource(short[] samples, long frameCount, int... chunkFrames) {
+            data = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            data.asShortBuffer().put(samples);
+            this.frameCount = frameCount;
+            this.chunkFrames = chunkFrames;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public int getChannelCount() {
+            return CHANNELS;
+        }
+
+        @Override
+        public int getFormat() {
+            return WavHeader.FORMAT_PCM;
+        }
+
+        @Override
+        public int getBitsPerSample() {
+            return 16;
+        }
+
+        @Override
+        public long getFrameCount() {
+            return frameCount;
+        }
+
+        @Override
+        public ByteBuffer read() {
+            if (!data.hasRemaining()) return null;
+            int bytes = Math.min(data.remaining(), chunkFrames[chunk++ % chunkFrames.length] * CHANNELS * 2);
+            ByteBuffer slice = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+            slice.limit(bytes);
+            data.position(data.position() + bytes);
+            return slice;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks every sample format {@link Downmixer} supports against the same stereo frames,
+ * given on a 16-bit scale in steps of 256 so that even 8-bit samples hold them exactly.
+ */
+public class DownmixerTest {
+
+    private static final int[][] FRAMES = {{256, 768}, {-32768, -32768}, {32512, -512}, {0, 0}, {-256, 256}};
+    private static final int[] MONO = {512, -32768, 16000, 0, 0};
+
+    @Test
+    public void pcm8_isUnsignedAndCentered() throws IOException {
+        ByteBuffer data = buffer(1);
+        for (int[] frame : FRAMES) {
+            for (int value : frame) data.put((byte) ((value >> 8) + 128));
+        }
+        assertDownmix(WavHeader.FORMAT_PCM, 1, data, 0);
+    }
+
+    @Test
+    public void pcm16() throws IOException {
+        ByteBuffer data = buffer(2);
+        for (int[] frame : FRAMES) {
+            for (int value : frame) data.putShort((short) value);
+        }
+        assertDownmix(WavHeader.FORMAT_PCM, 2, data, 0);
+    }
+
+    @Test
+    public void pcm24_keepsTheTopTwoBytes() throws IOException {
+        ByteBuffer data = buffer(3);
+        for (int[] frame : FRAMES) {
+            for (int value : frame) data.put((byte) 0x7F).put((byte) value).put((byte) (value >> 8));
+        }
+        assertDownmix(WavHeader.FORMAT_PCM, 3, data, 0);
+    }
+
+    @Test
+    public void pcm32_keepsTheTopTwoBytes() throws IOException {
+        ByteBuffer data = buffer(4);
+        for (int[] frame : FRAMES) {
+            for (int value : frame) data.putInt(value << 16 | 0x7FFF);
+        }
+        assertDownmix(WavHeader.FORMAT_PCM, 4, data, 0);
+    }
+
+    @Test
+    public void float32_isScaledFromUnitRange() throws IOException {
+        ByteBuffer data = buffer(4);
+        for (int[] frame : FRAMES) {
+            for (int value : frame) data.putFloat(value / 32767f);
+        }
+        assertDownmix(WavHeader.FORMAT_IEEE_FLOAT, 4, data, 1);
+    }
+
+    @Test
+    public void float64_isScaledFromUnitRange() throws IOException {
+        ByteBuffer data = buffer(8);
+        for (int[] frame : FRAMES) {
+            for (int value : frame) data.putDouble(value / 32767.0);
+        }
+        assertDownmix(WavHeader.FORMAT_IEEE_FLOAT, 8, data, 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedFormat_isRejected() throws IOException {
+        Downmixer.create(WavHeader.FORMAT_IEEE_FLOAT, 2, 2, 16);
+    }
+
+    private static ByteBuffer buffer(int bytesPerSample) {
+        // A leading byte checks that bind() starts at the buffer's position.
+        ByteBuffer data = ByteBuffer.allocate(1 + FRAMES.length * 2 * bytesPerSample).order(ByteOrder.LITTLE_ENDIAN);
+        data.put((byte) 0x33);
+        return data;
+    }
+
+    /**
+     * Downmixes all frames in one read, then the last three after a seek, allowing
+     * {@code tolerance} for float rounding.
+     */
+    private static void assertDownmix(int format, int bytesPerSample, ByteBuffer data, int tolerance)
+            throws IOException {
+        data.position(1);
+        Downmixer downmixer = Downmixer.create(format, bytesPerSample, 2, FRAMES.length);
+        downmixer.bind(data);
+        int[] mono = new int[FRAMES.length];
+        downmixer.read(FRAMES.length, mono);
+        for (int f = 0; f < FRAMES.length; f++) {
+            assertEquals("frame " + f, MONO[f], mono[f], tolerance);
+        }
+
+        downmixer.seek(2);
+        downmixer.read(3, mono);
+        for (int f = 0; f < 3; f++) {
+            assertEquals("frame " + (f + 2) + " after seek", MONO[f + 2], mono[f], tolerance);
+        }
+    }
+}
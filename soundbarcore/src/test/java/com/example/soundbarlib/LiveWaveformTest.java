@@ -0,0 +1,80 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the bars a {@link LiveWaveform} publishes while recording and the pyramid it
+ * hands back when the recording finishes.
+ */
+public class LiveWaveformTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    @Test
+    public void readBars_rightAlignsNewestBars() {
+        LiveWaveform live = new LiveWaveform(SAMPLE_RATE, 1, 100);
+        // Three full-scale bars, then a silent one, then half a bar.
+        live.write(constant(-32768, 2400), 0, 2400);
+        live.write(constant(0, 1200), 0, 1200);
+
+        byte[] levels = new byte[6];
+        assertEquals(4, live.readBars(levels));
+        assertArrayEquals(new byte[]{0, 0, 100, 100, 100, 0}, levels);
+        assertEquals(450, live.getDurationMs());
+
+        byte[] newest = new byte[2];
+        live.readBars(newest);
+        assertArrayEquals(new byte[]{100, 0}, newest);
+    }
+
+    @Test
+    public void finish_matchesStreamedAnalysis() throws Exception {
+        short[] samples = new short[SAMPLE_RATE * 5 + 77];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (Math.sin(i / 10.0) * 20000 * (i % 3000) / 3000);
+        }
+        LiveWaveform live = new LiveWaveform(SAMPLE_RATE, 1);
+        for (int offset = 0; offset < samples.length; offset += 333) {
+            live.write(samples, offset, Math.min(333, samples.length - offset));
+        }
+        PeakPyramid recorded = live.finish();
+
+        BinAccumulator expected = new BinAccumulator(PeakPyramid.FINE_BASE_FRAMES);
+        int[] mono = new int[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            mono[i] = samples[i];
+        }
+        expected.add(mono, mono.length);
+        PeakPyramid analysed = expected.finish(SAMPLE_RATE);
+
+        assertEquals(analysed.getFrameCount(), recorded.getFrameCount());
+        assertEquals(analysed.getDurationMs(), recorded.getDurationMs());
+        assertTrue(Arrays.deepEquals(analysed.max, recorded.max));
+        assertTrue(Arrays.deepEquals(analysed.meanAbs, recorded.meanAbs));
+        assertSame(recorded, live.finish());
+    }
+
+    @Test
+    public void longRecordings_mergeBinsInsteadOfGrowing() {
+        BinAccumulator bins = new BinAccumulator(4, 8);
+        int[] ones = new int[100];
+        Arrays.fill(ones, 1000);
+        bins.add(ones, ones.length);
+
+        // 100 frames in bins of 4 reach the limit twice, leaving bins of 16.
+        assertEquals(16, bins.getBaseFrames());
+        PeakPyramid pyramid = bins.finish(SAMPLE_RATE);
+        assertEquals(7, pyramid.getBinCount(0));
+        assertEquals(1000f, pyramid.meanAbs[0][6], 0f);
+    }
+
+    private static short[] constant(int value, int length) {
+        short[] samples = new short[length];
+        Arrays.fill(samples, (short) value);
+        return samples;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the bars a zoomed view derives with {@link PeakPyramid#fillBars} match the
+ * ones {@link PeakPyramid#toWaveform} derives for the whole file.
+ */
+public class PeakPyramidTest {
+
+    @Test
+    public void fillBars_matchesToWaveformAtZoomOne() {
+        // Quiet audio, so the peak is a few units and rounding it would change the bars.
+        int[] mono = new int[100_003];
+        for (int i = 0; i < mono.length; i++) {
+            mono[i] = (int) Math.round(Math.sin(i / 40.0) * 7 * (i % 9000) / 9000);
+        }
+        BinAccumulator bins = new BinAccumulator(PeakPyramid.baseFramesFor(mono.length));
+        bins.add(mono, mono.length);
+        PeakPyramid pyramid = bins.finish(8000);
+
+        for (int metric = Waveform.METRIC_MEAN; metric <= Waveform.METRIC_ENVELOPE; metric++) {
+            for (int bars : new int[]{1, 37, 100, 1000, 1_000_000}) {
+                Waveform waveform = pyramid.toWaveform(bars, metric);
+                int total = pyramid.barCountFor(bars);
+                byte[] levels = new byte[total];
+                byte[] lowLevels = new byte[total];
+                pyramid.fillBars(total, 0, metric, waveform.getExactPeak(), levels, lowLevels);
+
+                String at = "metric " + metric + ", " + bars + " bars";
+                assertArrayEquals(at, waveform.levels, levels);
+                if (metric == Waveform.METRIC_ENVELOPE) {
+                    assertArrayEquals(at, waveform.lowLevels, lowLevels);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/** Checks that {@link WavHeader} walks past the chunks real-world WAV files carry. */
+public class WavHeaderTest {
+
+    @Test
+    public void listAndFactChunks_areSkipped() throws IOException {
+        ByteBuffer wav = riff();
+        chunk(wav, "LIST", 26);
+        fmt(wav, WavHeader.FORMAT_PCM, 16);
+        chunk(wav, "fact", 4);
+        long dataOffset = wav.position() + 8;
+        chunk(wav, "data", 400);
+
+        WavHeader header = parse(wav);
+        assertEquals(WavHeader.FORMAT_PCM, header.format);
+        assertEquals(2, header.channels);
+        assertEquals(44100, header.sampleRate);
+        assertEquals(16, header.bitsPerSample);
+        assertEquals(dataOffset, header.dataOffset);
+        assertEquals(100, header.getFrameCount());
+    }
+
+    @Test
+    public void oddSizedChunk_isFollowedByAPadByte() throws IOException {
+        ByteBuffer wav = riff();
+        chunk(wav, "junk", 3);
+        assertEquals(1, wav.position() % 2);
+        wav.put((byte) 0);
+        fmt(wav, WavHeader.FORMAT_PCM, 16);
+        long dataOffset = wav.position() + 8;
+        chunk(wav, "data", 40);
+
+        WavHeader header = parse(wav);
+        assertEquals(dataOffset, header.dataOffset);
+        assertEquals(10, header.getFrameCount());
+    }
+
+    @Test
+    public void extensibleFormat_usesTheSubFormat() throws IOException {
+        ByteBuffer wav = riff();
+        wav.put("fmt ".getBytes()).putInt(40).putShort((short) 0xFFFE).putShort((short) 2)
+                .putInt(48000).putInt(48000 * 8).putShort((short) 8).putShort((short) 32)
+                .putShort((short) 22).putShort((short) 32).putInt(3)
+                // KSDATAFORMAT_SUBTYPE_IEEE_FLOAT; its first two bytes are the format tag.
+                .putInt(WavHeader.FORMAT_IEEE_FLOAT).putShort((short) 0).putShort((short) 0x10)
+                .put(new byte[] {(byte) 0x80, 0, 0, (byte) 0xAA, 0, 0x38, (byte) 0x9B, 0x71});
+        chunk(wav, "data", 80);
+
+        WavHeader header = parse(wav);
+        assertEquals(WavHeader.FORMAT_IEEE_FLOAT, header.format);
+        assertEquals(48000, header.sampleRate);
+        assertEquals(4, header.getBytesPerSample());
+        assertEquals(10, header.getFrameCount());
+    }
+
+    private static ByteBuffer riff() {
+        ByteBuffer wav = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        // The RIFF size is patched in by parse().
+        wav.put("RIFF".getBytes()).putInt(0).put("WAVE".getBytes());
+        return wav;
+    }
+
+    /** A stereo 44.1 kHz fmt chunk of the given format and sample size. */
+    private static void fmt(ByteBuffer wav, int format, int bits) {
+        int blockAlign = 2 * bits / 8;
+        wav.put("fmt ".getBytes()).putInt(16).putShort((short) format).putShort((short) 2)
+                .putInt(44100).putInt(44100 * blockAlign).putShort((short) blockAlign)
+                .putShort((short) bits);
+    }
+
+    /** A chunk of {@code size} bytes of a recognizable filler, without the pad byte. */
+    private static void chunk(ByteBuffer wav, String id, int size) {
+        wav.put(id.getBytes()).putInt(size);
+        for (int i = 0; i < size; i++) {
+            wav.put((byte) 0x5A);
+        }
+    }
+
+    private static WavHeader parse(ByteBuffer wav) throws IOException {
+        wav.putInt(4, wav.position() - 8);
+        File file = File.createTempFile("header", ".wav");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(wav.array(), 0, wav.position());
+            }
+            try (FileInputStream in = new FileInputStream(file)) {
+                return WavHeader.parse(in.getChannel());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link WaveformFile} reads back exactly what it wrote, and rejects damaged
+ * data with a {@link WaveformFormatException}.
+ */
+public class WaveformFileTest {
+
+    @Test
+    public void writeThenRead_roundTrips() throws IOException {
+        PeakPyramid pyramid = pyramid(50_001);
+        File file = File.createTempFile("waveform", ".wf");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                WaveformFile.write(pyramid, out.getChannel());
+            }
+            assertEquals(WaveformFile.sizeOf(pyramid), file.length());
+            PeakPyramid read;
+            try (FileInputStream in = new FileInputStream(file)) {
+                read = WaveformFile.read(in.getChannel());
+            }
+            assertSamePyramid(pyramid, read);
+            assertSamePyramid(pyramid, WaveformFile.fromByteArray(WaveformFile.toByteArray(pyramid)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void truncatedFile_isAFormatError() throws IOException {
+        byte[] bytes = WaveformFile.toByteArray(pyramid(20_000));
+        File file = File.createTempFile("waveform", ".wf");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(bytes, 0, bytes.length - 10);
+            }
+            try (FileInputStream in = new FileInputStream(file)) {
+                FileChannel channel = in.getChannel();
+                WaveformFile.read(channel);
+                fail("Read a truncated file");
+            } catch (WaveformFormatException expected) {
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void flippedByte_failsTheChecksum() {
+        byte[] bytes = WaveformFile.toByteArray(pyramid(20_000));
+        bytes[bytes.length / 2] ^= 1;
+        try {
+            WaveformFile.fromByteArray(bytes);
+            fail("Read a corrupt file");
+        } catch (WaveformFormatException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("checksum"));
+        }
+    }
+
+    @Test
+    public void inconsistentHeader_isRejectedBeforeAllocating() {
+        byte[] bytes = WaveformFile.toByteArray(pyramid(20_000));
+        // frameCount, right after magic, version, sampleRate and durationMs.
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(20, Integer.MAX_VALUE);
+        try {
+            WaveformFile.fromByteArray(bytes);
+            fail("Read a file whose frame count does not match its bins");
+        } catch (WaveformFormatException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("header"));
+        }
+    }
+
+    static PeakPyramid pyramid(int frames) {
+        int[] mono = new int[frames];
+        for (int i = 0; i < frames; i++) {
+            mono[i] = (int) (Math.sin(i / 13.0) * 12000 * (i % 7000) / 7000);
+        }
+        BinAccumulator bins = new BinAccumulator(PeakPyramid.baseFramesFor(frames));
+        bins.add(mono, frames);
+        return bins.finish(22050);
+    }
+
+    private static void assertSamePyramid(PeakPyramid expected, PeakPyramid actual) {
+        assertEquals(expected.getSampleRate(), actual.getSampleRate());
+        assertEquals(expected.getDurationMs(), actual.getDurationMs());
+        assertEquals(expected.getFrameCount(), actual.getFrameCount());
+        assertEquals(expected.getBaseFrames(), actual.getBaseFrames());
+        assertTrue(Arrays.deepEquals(expected.min, actual.min));
+        assertTrue(Arrays.deepEquals(expected.max, actual.max));
+        assertTrue(Arrays.deepEquals(expected.meanAbs, actual.meanAbs));
+        assertTrue(Arrays.deepEquals(expected.rms, actual.rms));
+    }
+}
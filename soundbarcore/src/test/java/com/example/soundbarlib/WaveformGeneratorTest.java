@@ -0,0 +1,68 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/** Checks that decoding a WAV file in parallel segments changes nothing about the result. */
+public class WaveformGeneratorTest {
+
+    private static final int SAMPLE_RATE = 44100;
+
+    @Test
+    public void parallelPyramid_matchesSequentialAtEveryLevel() throws IOException {
+        // About six 1024-bin segments, the last one short, ending in a partial bin.
+        File wav = writeMonoWav(6 * 1024 * 128 + 77);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            PeakPyramid sequential = WaveformGenerator.buildPyramid(wav);
+            PeakPyramid parallel = WaveformGenerator.buildPyramidParallel(wav, executor);
+
+            assertTrue(sequential.getBinCount(0) > 5 * 1024);
+            assertNotEquals(0, sequential.getFrameCount() % sequential.getBaseFrames());
+            assertEquals(sequential.getFrameCount(), parallel.getFrameCount());
+            assertEquals(sequential.getBaseFrames(), parallel.getBaseFrames());
+            assertEquals(sequential.getLevelCount(), parallel.getLevelCount());
+            for (int level = 0; level < sequential.getLevelCount(); level++) {
+                String message = "level " + level;
+                assertArrayEquals(message, sequential.min[level], parallel.min[level]);
+                assertArrayEquals(message, sequential.max[level], parallel.max[level]);
+                assertTrue(message, Arrays.equals(sequential.meanAbs[level], parallel.meanAbs[level]));
+                assertTrue(message, Arrays.equals(sequential.rms[level], parallel.rms[level]));
+            }
+        } finally {
+            executor.shutdownNow();
+            wav.delete();
+        }
+    }
+
+    /** A 16-bit mono sweep whose loudness keeps changing, so neighbouring bins differ. */
+    private static File writeMonoWav(int frames) throws IOException {
+        int dataLength = frames * 2;
+        ByteBuffer buffer = ByteBuffer.allocate(44 + dataLength).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(36 + dataLength).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16).putShort((short) WavHeader.FORMAT_PCM)
+                .putShort((short) 1).putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2)
+                .putShort((short) 2).putShort((short) 16);
+        buffer.put("data".getBytes()).putInt(dataLength);
+        for (int f = 0; f < frames; f++) {
+            double envelope = 0.5 + 0.5 * Math.sin(f / 5000.0);
+            buffer.putShort((short) (Math.sin(f * (0.01 + f / 1e8)) * envelope * 32767));
+        }
+
+        File file = File.createTempFile("sweep", ".wav");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buffer.array());
+        }
+        return file;
+    }
+}
@@ -30,6 +30,7 @@ android {
 
 dependencies {
 
+    api(project(":soundbarcore"))
     implementation(libs.appcompat)
     implementation(libs.material)
     testImplementation(libs.junit)
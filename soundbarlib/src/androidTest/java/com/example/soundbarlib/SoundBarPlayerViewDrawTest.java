@@ -0,0 +1,104 @@
+package com.example.soundbarlib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Draws {@link SoundBarPlayerView} into a bitmap and checks that warm frames allocate
+ * nothing in either render mode, while playing and while panning a zoomed waveform.
+ * {@link BarGeometryAllocationTest} covers the same on the JVM without a {@code Canvas}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SoundBarPlayerViewDrawTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 240;
+    private static final int FRAMES = 300;
+
+    @Test
+    public void directFrames_doNotAllocate() {
+        assertWarmFramesDoNotAllocate(SoundBarPlayerView.RENDER_MODE_DIRECT);
+    }
+
+    @Test
+    public void layeredFrames_doNotAllocate() {
+        assertWarmFramesDoNotAllocate(SoundBarPlayerView.RENDER_MODE_LAYERED);
+    }
+
+    private static void assertWarmFramesDoNotAllocate(int renderMode) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            SoundBarPlayerView view = new SoundBarPlayerView(
+                    InstrumentationRegistry.getInstrumentation().getTargetContext());
+            view.setRenderMode(renderMode);
+            view.setWaveform(pyramid().toWaveform(WIDTH / 4));
+            view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, WIDTH, HEIGHT);
+            Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+
+            // Warm up playing, then zoomed panning, so every cache is built once.
+            drawPlaying(view, canvas);
+            drawPanning(view, canvas);
+            view.setViewport(0f, 1f);
+            drawPlaying(view, canvas);
+
+            assertEquals(0, countAllocations(() -> drawPlaying(view, canvas)));
+            assertEquals(0, countAllocations(() -> drawPanning(view, canvas)));
+        });
+    }
+
+    private static void drawPlaying(SoundBarPlayerView view, Canvas canvas) {
+        for (int frame = 0; frame < FRAMES; frame++) {
+            view.setProgress((float) frame / FRAMES);
+            view.draw(canvas);
+        }
+    }
+
+    /** Pans a 4x zoom across a few bars, mostly by less than a bar per frame. */
+    private static void drawPanning(SoundBarPlayerView view, Canvas canvas) {
+        for (int frame = 0; frame < FRAMES; frame++) {
+            view.setViewport(0.25f + frame * 0.00005f, 4f);
+            view.draw(canvas);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int countAllocations(Runnable frames) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            frames.run();
+            return Debug.getThreadAllocCount();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    /** A minute of a tone whose loudness keeps changing, so the bars differ. */
+    private static PeakPyramid pyramid() {
+        int sampleRate = 44100;
+        int frames = sampleRate * 60;
+        BinAccumulator bins = new BinAccumulator(PeakPyramid.baseFramesFor(frames));
+        int[] mono = new int[4096];
+        for (int done = 0; done < frames; ) {
+            int count = Math.min(mono.length, frames - done);
+            for (int i = 0; i < count; i++) {
+                int f = done + i;
+                mono[i] = (int) (Math.sin(f * 0.06) * (0.5 + 0.5 * Math.sin(f / 20000.0)) * 32767);
+            }
+            bins.add(mono, count);
+            done += count;
+        }
+        return bins.finish(sampleRate);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.soundbarlib;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaMetadataRetriever;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * The blocking work behind {@link SoundBarPlayerView}'s load methods: cache lookup and
+ * decoding. WAV data is mapped and its duration taken from the header; anything else is
+ * streamed through {@link MediaCodecSampleSource}, and its duration is that of the frames
+ * decoded. Either way no native media probe is needed. Safe to call from any thread.
+ */
+class AudioLoader {
+
+    static class Result {
+        final PeakPyramid pyramid;
+        final float durationInSeconds;
+
+        Result(PeakPyramid pyramid, float durationInSeconds) {
+            this.pyramid = pyramid;
+            this.durationInSeconds = durationInSeconds;
+        }
+    }
+
+    /**
+     * @param barCount bars to report to {@code listener} while decoding
+     * @param listener receives bars while decoding, or {@code null}; not called on a cache hit
+     *                 or for compressed audio
+     */
+    static Result loadFile(File file, WaveformCache cache, int barCount,
+                           WaveformGenerator.ProgressListener listener) throws IOException {
+        SoundBarMetrics.LoadTrace trace = SoundBarMetrics.beginLoad();
+        String key = cache != null ? WaveformCache.keyForFile(file) : null;
+        return loadFile(file, cache, key, barCount, listener, trace);
+    }
+
+    static Result loadResource(Context context, int resId, WaveformCache cache, int barCount,
+                               WaveformGenerator.ProgressListener listener) throws IOException {
+        SoundBarMetrics.LoadTrace trace = SoundBarMetrics.beginLoad();
+        String key = null;
+        if (cache != null) {
+            key = WaveformCache.keyForResource(context, resId);
+            PeakPyramid cached = cache.get(key);
+            if (cached != null) {
+                return cacheHit(cached, trace);
+            }
+        }
+
+        // Uncompressed resources are decoded straight out of the APK.
+        AssetFileDescriptor afd = FileUtil.openRawResourceFd(context, resId);
+        if (afd != null) {
+            try (FileInputStream in = afd.createInputStream()) {
+                FileChannel channel = in.getChannel();
+                long length = afd.getLength() >= 0 ? afd.getLength() : channel.size() - afd.getStartOffset();
+                PeakPyramid pyramid = decode(channel, afd.getStartOffset(), length, barCount, listener, trace,
+                        () -> new MediaCodecSampleSource(afd));
+                if (key != null) cache.put(key, pyramid);
+                return finish(pyramid, durationInSeconds(pyramid, null, afd, length, trace), trace);
+            }
+        }
+
+        File wavFile;
+        if (trace != null) trace.begin(SoundBarMetrics.PHASE_COPY);
+        try {
+            wavFile = FileUtil.rawToWavFile(context, resId);
+        } finally {
+            if (trace != null) trace.end();
+        }
+        if (wavFile == null) {
+            throw new IOException("Could not copy resource " + resId);
+        }
+        return loadFile(wavFile, cache, key, barCount, listener, trace);
+    }
+
+    private static Result loadFile(File file, WaveformCache cache, String key, int barCount,
+                                   WaveformGenerator.ProgressListener listener,
+                                   SoundBarMetrics.LoadTrace trace) throws IOException {
+        PeakPyramid pyramid = key != null ? cache.get(key) : null;
+        if (pyramid != null) return cacheHit(pyramid, trace);
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            pyramid = decode(channel, 0, channel.size(), barCount, listener, trace,
+                    () -> new MediaCodecSampleSource(file));
+        }
+        if (key != null) cache.put(key, pyramid);
+        return finish(pyramid, durationInSeconds(pyramid, file, null, 0, trace), trace);
+    }
+
+    private interface SourceOpener {
+        AudioSampleSource open() throws IOException;
+    }
+
+    /**
+     * Maps the {@code length} bytes at {@code offset} if they hold a WAV file, and otherwise
+     * streams them from the source {@code compressed} opens.
+     */
+    private static PeakPyramid decode(FileChannel channel, long offset, long length, int barCount,
+                                      WaveformGenerator.ProgressListener listener,
+                                      SoundBarMetrics.LoadTrace trace, SourceOpener compressed)
+            throws IOException {
+        try {
+            if (trace != null) trace.begin(SoundBarMetrics.PHASE_HEADER);
+            WavHeader header = WavHeader.isWave(channel, offset, length)
+                    ? WavHeader.parse(channel, offset, length) : null;
+            if (trace != null) {
+                trace.end();
+                trace.addBytesRead(header != null ? header.dataOffset - offset + header.dataLength : length);
+                trace.begin(SoundBarMetrics.PHASE_ANALYSIS);
+            }
+            if (header != null) {
+                return WaveformGenerator.buildPyramid(channel, header, barCount, listener);
+            }
+            try (AudioSampleSource source = compressed.open()) {
+                return WaveformGenerator.buildPyramid(source);
+            }
+        } finally {
+            if (trace != null) trace.end();
+        }
+    }
+
+    private static Result cacheHit(PeakPyramid pyramid, SoundBarMetrics.LoadTrace trace) {
+        if (trace != null) trace.addBytesRead(WaveformFile.sizeOf(pyramid));
+        Result result = new Result(pyramid, durationInSeconds(pyramid, null, null, 0, trace));
+        if (trace != null) trace.finish(SoundBarMetrics.CACHE_DISK_HIT);
+        return result;
+    }
+
+    private static Result finish(PeakPyramid pyramid, float durationInSeconds, SoundBarMetrics.LoadTrace trace) {
+        if (trace != null) trace.finish(SoundBarMetrics.CACHE_MISS);
+        return new Result(pyramid, durationInSeconds);
+    }
+
+    /**
+     * The duration the header gave {@code pyramid}. Only when that is unknown, such as for a
+     * header without a usable sample rate, is the source probed with
+     * {@link MediaMetadataRetriever}.
+     */
+    private static float durationInSeconds(PeakPyramid pyramid, File file, AssetFileDescriptor afd,
+                                           long length, SoundBarMetrics.LoadTrace trace) {
+        if (pyramid.getSampleRate() > 0) {
+            return pyramid.getDurationMs() / 1000f;
+        }
+        if (afd == null && file == null) return 0f;
+        if (trace != null) trace.begin(SoundBarMetrics.PHASE_PROBE);
+        try {
+            return afd != null ? extractDurationInSeconds(afd, length) : extractDurationInSeconds(file);
+        } finally {
+            if (trace != null) trace.end();
+        }
+    }
+
+    private static float extractDurationInSeconds(AssetFileDescriptor afd, long length) {
+        try {
+            MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+            mmr.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), length);
+            String durationStr = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            mmr.release();
+            return Float.parseFloat(durationStr) / 1000f;
+        } catch (Exception e) {
+            return 0f;
+        }
+    }
+
+    private static float extractDurationInSeconds(File file) {
+        try {
+            MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+            mmr.setDataSource(file.getAbsolutePath());
+            String durationStr = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            mmr.release();
+            return Float.parseFloat(durationStr) / 1000f;
+        } catch (Exception e) {
+            return 0f;
+        }
+    }
+}
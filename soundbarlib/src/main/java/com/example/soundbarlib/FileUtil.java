@@ -1,32 +1,103 @@
 package com.example.soundbarlib;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.regex.Pattern;
 
 public class FileUtil {
 
+    private static final String COPY_DIR = "raw";
+    /** Created in {@link #COPY_DIR} once the legacy copies have been swept. */
+    private static final String LEGACY_SWEPT_MARKER = ".legacy-swept";
+    /**
+     * Names {@code File.createTempFile("audio", ".wav", cacheDir)} produced in older versions:
+     * the prefix, a random integer, the suffix. Nothing else in the cache directory is ours.
+     */
+    private static final Pattern LEGACY_COPY = Pattern.compile("audio-?\\d+\\.wav");
+
+    /**
+     * Returns a file holding the raw resource {@code rawResId}. Each resource is copied at
+     * most once per app version, so repeated calls return the same file.
+     */
     public static File rawToWavFile(Context context, int rawResId) {
         try {
-            InputStream inputStream = context.getResources().openRawResource(rawResId);
-            File tempFile = File.createTempFile("audio", ".wav", context.getCacheDir());
-            tempFile.deleteOnExit();
-
-            FileOutputStream outputStream = new FileOutputStream(tempFile);
-            byte[] buffer = new byte[4096];
-            int read;
-            while ((read = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, read);
+            File dir = new File(context.getCacheDir(), COPY_DIR);
+            if (!dir.isDirectory() && !dir.mkdirs()) return null;
+            deleteLegacyCopiesOnce(context.getCacheDir(), dir);
+
+            String prefix = "res_" + rawResId + "_";
+            File copy = new File(dir, prefix + appVersion(context) + ".wav");
+            if (copy.isFile()) return copy;
+
+            // Copies made by an older version of the app are stale now.
+            File[] stale = dir.listFiles((d, name) -> name.startsWith(prefix));
+            if (stale != null) {
+                for (File file : stale) {
+                    file.delete();
+                }
             }
 
-            outputStream.close();
-            inputStream.close();
-            return tempFile;
+            File tempFile = File.createTempFile(prefix, ".tmp", dir);
+            try (InputStream inputStream = context.getResources().openRawResource(rawResId);
+                 FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                }
+            }
+            if (!tempFile.renameTo(copy)) {
+                tempFile.delete();
+                return null;
+            }
+            return copy;
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
+
+    /**
+     * Opens the raw resource {@code rawResId} in place, or returns {@code null} if it is
+     * stored compressed in the APK and has to be copied instead.
+     */
+    public static AssetFileDescriptor openRawResourceFd(Context context, int rawResId) {
+        try {
+            return context.getResources().openRawResourceFd(rawResId);
+        } catch (Resources.NotFoundException e) {
+            return null;
+        }
+    }
+
+    /** Changes whenever the app is installed or updated. */
+    static long appVersion(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Older versions left one temp file per load in the cache directory. They are deleted the
+     * first time a resource is copied, and never looked for again.
+     */
+    private static void deleteLegacyCopiesOnce(File cacheDir, File copyDir) throws IOException {
+        File marker = new File(copyDir, LEGACY_SWEPT_MARKER);
+        if (marker.exists()) return;
+        File[] legacy = cacheDir.listFiles((d, name) -> LEGACY_COPY.matcher(name).matches());
+        if (legacy != null) {
+            for (File file : legacy) {
+                file.delete();
+            }
+        }
+        marker.createNewFile();
+    }
 }
@@ -0,0 +1,263 @@
+package com.example.soundbarlib;
+
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes the first audio track of any file the platform can play, such as MP3, AAC or
+ * Opus, with {@link MediaExtractor} and {@link MediaCodec}. Each {@link #read()} returns a
+ * codec output buffer directly, so the decoded PCM is never copied or written to disk.
+ */
+public class MediaCodecSampleSource implements AudioSampleSource {
+
+    private static final long TIMEOUT_US = 10_000;
+
+    private final MediaExtractor extractor;
+    private final MediaCodec codec;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+    private int sampleRate;
+    private int channels;
+    private int format;
+    private int bitsPerSample;
+    private final long frameCount;
+
+    private boolean inputDone;
+    private boolean outputDone;
+    /** The output buffer held by the caller since the last read, or -1. */
+    private int heldBuffer = -1;
+    /** An output buffer dequeued while waiting for the format, to be returned first. */
+    private int pendingBuffer = -1;
+
+    public MediaCodecSampleSource(File file) throws IOException {
+        this(newExtractor(file, null));
+    }
+
+    /** Decodes the region of {@code afd}, such as an uncompressed raw resource, in place. */
+    public MediaCodecSampleSource(AssetFileDescriptor afd) throws IOException {
+        this(newExtractor(null, afd));
+    }
+
+    private MediaCodecSampleSource(MediaExtractor extractor) throws IOException {
+        this.extractor = extractor;
+        MediaCodec decoder = null;
+        try {
+            MediaFormat trackFormat = selectAudioTrack(extractor);
+            decoder = MediaCodec.createDecoderByType(trackFormat.getString(MediaFormat.KEY_MIME));
+            decoder.configure(trackFormat, null, null, 0);
+            decoder.start();
+            codec = decoder;
+
+            setFormat(trackFormat);
+            frameCount = trackFormat.containsKey(MediaFormat.KEY_DURATION) && sampleRate > 0
+                    ? trackFormat.getLong(MediaFormat.KEY_DURATION) * sampleRate / 1_000_000 : -1;
+            // The decoder only reports what it really outputs once it has seen some input.
+            primeOutputFormat();
+        } catch (IOException | RuntimeException e) {
+            if (decoder != null) decoder.release();
+            extractor.release();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    private static MediaExtractor newExtractor(File file, AssetFileDescriptor afd) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            if (afd != null) {
+                extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            } else {
+                extractor.setDataSource(file.getAbsolutePath());
+            }
+        } catch (IOException | RuntimeException e) {
+            extractor.release();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        return extractor;
+    }
+
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) throws IOException {
+        for (int track = 0; track < extractor.getTrackCount(); track++) {
+            MediaFormat format = extractor.getTrackFormat(track);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(track);
+                return format;
+            }
+        }
+        throw new IOException("No audio track");
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channels;
+    }
+
+    @Override
+    public int getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    /** Estimated from the track's duration, which containers may round. */
+    @Override
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public ByteBuffer read() throws IOException {
+        releaseHeldBuffer();
+        while (!outputDone) {
+            int index;
+            if (pendingBuffer >= 0) {
+                index = pendingBuffer;
+                pendingBuffer = -1;
+            } else {
+                index = dequeueOutput();
+                if (index < 0) continue;
+            }
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) outputDone = true;
+            if (info.size <= 0) {
+                codec.releaseOutputBuffer(index, false);
+                continue;
+            }
+            ByteBuffer buffer = codec.getOutputBuffer(index);
+            if (buffer == null) {
+                codec.releaseOutputBuffer(index, false);
+                continue;
+            }
+            heldBuffer = index;
+            buffer.limit(info.offset + info.size).position(info.offset);
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            codec.stop();
+        } catch (IllegalStateException ignored) {
+            // Already stopped by an error.
+        }
+        codec.release();
+        extractor.release();
+    }
+
+    /**
+     * Feeds input until the decoder reports its output format, keeping the first output
+     * buffer for {@link #read()} if it comes before the format.
+     */
+    private void primeOutputFormat() throws IOException {
+        while (!outputDone) {
+            feedInput();
+            int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) checkInterrupted();
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                setFormat(codec.getOutputFormat());
+                return;
+            }
+            if (index >= 0) {
+                setFormat(codec.getOutputFormat(index));
+                pendingBuffer = index;
+                return;
+            }
+        }
+    }
+
+    /** Returns the next output buffer index, or a negative value to try again. */
+    private int dequeueOutput() throws IOException {
+        feedInput();
+        int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+        if (index == MediaCodec.INFO_TRY_AGAIN_LATER) checkInterrupted();
+        if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            int oldRate = sampleRate, oldChannels = channels, oldFormat = format, oldBits = bitsPerSample;
+            setFormat(codec.getOutputFormat());
+            // The caller has read the format already.
+            if (sampleRate != oldRate || channels != oldChannels
+                    || format != oldFormat || bitsPerSample != oldBits) {
+                throw new IOException("Audio format changed while decoding");
+            }
+        }
+        return index;
+    }
+
+    private void feedInput() throws InterruptedIOException {
+        if (inputDone) return;
+        int index = codec.dequeueInputBuffer(TIMEOUT_US);
+        if (index < 0) {
+            checkInterrupted();
+            return;
+        }
+        ByteBuffer input = codec.getInputBuffer(index);
+        int size = input != null ? extractor.readSampleData(input, 0) : -1;
+        if (size < 0) {
+            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+        } else {
+            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+            extractor.advance();
+        }
+    }
+
+    /**
+     * Ends a decode whose thread was interrupted, e.g. by a cancelled load. The codec never
+     * blocks on the interrupt itself, so this runs after each dequeue that timed out.
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.interrupted()) throw new InterruptedIOException("Decoding interrupted");
+    }
+
+    private void releaseHeldBuffer() {
+        if (heldBuffer >= 0) {
+            codec.releaseOutputBuffer(heldBuffer, false);
+            heldBuffer = -1;
+        }
+    }
+
+    private void setFormat(MediaFormat mediaFormat) throws IOException {
+        if (mediaFormat.containsKey(MediaFormat.KEY_SAMPLE_RATE)) {
+            sampleRate = mediaFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        }
+        if (mediaFormat.containsKey(MediaFormat.KEY_CHANNEL_COUNT)) {
+            channels = mediaFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        }
+        // Decoders output 16-bit PCM unless they say otherwise, and float only when asked to.
+        int encoding = mediaFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                ? mediaFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) : AudioFormat.ENCODING_PCM_16BIT;
+        switch (encoding) {
+            case AudioFormat.ENCODING_PCM_8BIT:
+                format = WavHeader.FORMAT_PCM;
+                bitsPerSample = 8;
+                break;
+            case AudioFormat.ENCODING_PCM_16BIT:
+                format = WavHeader.FORMAT_PCM;
+                bitsPerSample = 16;
+                break;
+            case AudioFormat.ENCODING_PCM_FLOAT:
+                format = WavHeader.FORMAT_IEEE_FLOAT;
+                bitsPerSample = 32;
+                break;
+            default:
+                throw new IOException("Unsupported PCM encoding " + encoding);
+        }
+    }
+}
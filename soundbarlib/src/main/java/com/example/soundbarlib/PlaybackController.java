@@ -0,0 +1,188 @@
+package com.example.soundbarlib;
+
+import android.media.MediaPlayer;
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * Drives a {@link SoundBarPlayerView}'s progress from a {@link MediaPlayer} once per display
+ * frame. The player clock is only read every {@link #CLOCK_SYNC_INTERVAL_NS}; frames in
+ * between extrapolate from the last reading, so the playhead moves smoothly without a
+ * call into the player on every frame.
+ * <p>
+ * Frame callbacks run only while the player is playing and the view is attached. Must be
+ * used from the main thread.
+ * <p>
+ * The controller is also an {@link SoundBarPlayerView.OnSeekListener}: set it on the view to
+ * scrub with fast sync-frame seeks and land on the exact position when the drag ends.
+ */
+public class PlaybackController implements Choreographer.FrameCallback,
+        SoundBarPlayerView.OnSeekListener {
+
+    private static final long CLOCK_SYNC_INTERVAL_NS = 250_000_000L;
+    /** Readings this far behind the extrapolated position are treated as jitter. */
+    private static final int MAX_BACKWARD_JITTER_MS = 100;
+
+    private final SoundBarPlayerView view;
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private MediaPlayer player;
+    private boolean scheduled = false;
+    /**
+     * Time of the previous frame of the current run of frames, or 0 at the start of a run,
+     * for counting the frames dropped in between.
+     */
+    private long lastFrameNanos;
+
+    private int durationMs;
+    private int anchorPositionMs;
+    private long anchorFrameNanos = -1;
+    private float speed = 1f;
+
+    private final View.OnAttachStateChangeListener attachListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            refresh();
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            stopUpdates();
+        }
+    };
+
+    public PlaybackController(SoundBarPlayerView view) {
+        this.view = view;
+        view.addOnAttachStateChangeListener(attachListener);
+    }
+
+    /**
+     * Binds {@code player}, replacing any previous one, and shows its current position.
+     * The player's listeners are left untouched.
+     */
+    public void bind(MediaPlayer player) {
+        stopUpdates();
+        this.player = player;
+        refresh();
+    }
+
+    /** Stops following the bound player. */
+    public void unbind() {
+        stopUpdates();
+        player = null;
+    }
+
+    public void play() {
+        if (player == null) return;
+        player.start();
+        refresh();
+    }
+
+    public void pause() {
+        if (player == null) return;
+        player.pause();
+        refresh();
+    }
+
+    public void seekTo(int positionMs) {
+        seekTo(positionMs, true);
+    }
+
+    /**
+     * Seeks the bound player. Seeks that are not {@code exact} go to the closest sync frame,
+     * which is much cheaper and good enough while the user is still scrubbing.
+     */
+    public void seekTo(int positionMs, boolean exact) {
+        if (player == null) return;
+        player.seekTo(positionMs, exact ? MediaPlayer.SEEK_CLOSEST : MediaPlayer.SEEK_CLOSEST_SYNC);
+        sync(positionMs, System.nanoTime());
+    }
+
+    @Override
+    public void onSeekTo(float percent, boolean isFinal) {
+        if (player == null) return;
+        seekTo((int) (player.getDuration() * percent), isFinal);
+    }
+
+    /**
+     * Re-reads the player state. Call it after starting, pausing or seeking the player
+     * directly; completion and external pauses are also noticed at the next clock sync.
+     */
+    public void refresh() {
+        if (player == null) return;
+        durationMs = player.getDuration();
+        sync(player.getCurrentPosition(), System.nanoTime());
+        if (player.isPlaying() && view.isAttachedToWindow()) {
+            readSpeed();
+            scheduleFrame();
+        } else {
+            stopUpdates();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        if (player == null) return;
+        if (SoundBarMetrics.isEnabled()) {
+            if (lastFrameNanos != 0) {
+                SoundBarMetrics.recordAnimationFrame(lastFrameNanos, frameTimeNanos, view.getFrameIntervalNanos());
+            }
+            lastFrameNanos = frameTimeNanos;
+        }
+
+        if (frameTimeNanos - anchorFrameNanos >= CLOCK_SYNC_INTERVAL_NS) {
+            if (!player.isPlaying()) {
+                sync(player.getCurrentPosition(), frameTimeNanos);
+                lastFrameNanos = 0;
+                return;
+            }
+            int reported = player.getCurrentPosition();
+            int extrapolated = extrapolate(frameTimeNanos);
+            boolean jitter = reported < extrapolated && extrapolated - reported < MAX_BACKWARD_JITTER_MS;
+            sync(jitter ? extrapolated : reported, frameTimeNanos);
+        } else {
+            showPosition(extrapolate(frameTimeNanos));
+        }
+        scheduleFrame();
+    }
+
+    private int extrapolate(long frameTimeNanos) {
+        long elapsedMs = Math.max(0, frameTimeNanos - anchorFrameNanos) / 1_000_000L;
+        return (int) Math.min(durationMs, anchorPositionMs + (long) (elapsedMs * speed));
+    }
+
+    private void sync(int positionMs, long nowNanos) {
+        anchorPositionMs = positionMs;
+        anchorFrameNanos = nowNanos;
+        showPosition(positionMs);
+    }
+
+    private void showPosition(int positionMs) {
+        if (durationMs > 0) {
+            view.setProgress(positionMs / (float) durationMs);
+        }
+    }
+
+    private void readSpeed() {
+        try {
+            speed = player.getPlaybackParams().getSpeed();
+        } catch (IllegalStateException e) {
+            speed = 1f;
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!scheduled) {
+            scheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    private void stopUpdates() {
+        lastFrameNanos = 0;
+        if (scheduled) {
+            choreographer.removeFrameCallback(this);
+            scheduled = false;
+        }
+    }
+}
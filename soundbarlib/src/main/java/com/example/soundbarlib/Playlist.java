@@ -0,0 +1,251 @@
+package com.example.soundbarlib;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+
+import java.io.IOException;
+
+/**
+ * Plays a list of raw resources in order through one {@link SoundBarPlayerView} and
+ * {@link PlaybackController}. The tracks before and after the current one are kept prepared
+ * with {@link MediaPlayer#prepareAsync()}, and their waveforms decoded into the
+ * {@link WaveformMemoryCache}, so switching to a neighbour starts at once. The next track is
+ * chained with {@link MediaPlayer#setNextMediaPlayer}, so playback advances without a gap.
+ * A track that fails to load or play is reported and skipped.
+ * <p>
+ * At most three players are held. Must be used from the main thread.
+ */
+public class Playlist {
+
+    public interface OnTrackChangeListener {
+        /** Called when {@code index} becomes the current track, including automatic advances. */
+        void onTrackChanged(int index);
+    }
+
+    public interface OnTrackErrorListener {
+        /**
+         * Called when track {@code index} could not be prepared or stopped playing with an
+         * error. If it was the current track, playback moves on to the next one.
+         */
+        void onTrackError(int index, Exception error);
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Context context;
+    private final SoundBarPlayerView view;
+    private final PlaybackController controller;
+    private final int[] resIds;
+    /** Prepared or preparing players around the current track, by index. */
+    private final SparseArray<Track> tracks = new SparseArray<>();
+    private int current = -1;
+    private OnTrackChangeListener trackChangeListener;
+    private OnTrackErrorListener trackErrorListener;
+
+    /** @param resIds the raw resources to play, in list order */
+    public Playlist(Context context, SoundBarPlayerView view, PlaybackController controller, int[] resIds) {
+        this.context = context.getApplicationContext();
+        this.view = view;
+        this.controller = controller;
+        this.resIds = resIds.clone();
+    }
+
+    public void setOnTrackChangeListener(OnTrackChangeListener listener) {
+        this.trackChangeListener = listener;
+    }
+
+    public void setOnTrackErrorListener(OnTrackErrorListener listener) {
+        this.trackErrorListener = listener;
+    }
+
+    public int getCurrentIndex() {
+        return current;
+    }
+
+    /** The current track's player, or {@code null} before the first {@link #play}. */
+    public MediaPlayer getCurrentPlayer() {
+        Track track = current >= 0 ? tracks.get(current) : null;
+        return track != null ? track.player : null;
+    }
+
+    /** Plays track {@code index} from the start; immediately if it was already prefetched. */
+    public void play(int index) {
+        if (index < 0 || index >= resIds.length) return;
+        Track previous = current >= 0 ? tracks.get(current) : null;
+        if (previous != null && previous.prepared) {
+            previous.player.setNextMediaPlayer(null);
+            if (previous.player.isPlaying()) previous.player.pause();
+        }
+        current = index;
+        Track track = tracks.get(index);
+        if (track != null && track.failed) {
+            // Asked for explicitly, so it gets another try.
+            track.release();
+            tracks.remove(index);
+        }
+        track = obtain(index);
+        if (track.prepared) {
+            track.player.seekTo(0);
+        }
+        track.playWhenPrepared = true;
+        show(track);
+        if (track.prepared) startCurrent(track);
+        prefetchNeighbours();
+    }
+
+    /** Releases every player. The playlist can be played again afterwards. */
+    public void release() {
+        controller.unbind();
+        for (int i = 0; i < tracks.size(); i++) {
+            tracks.valueAt(i).release();
+        }
+        tracks.clear();
+        current = -1;
+    }
+
+    private void show(Track track) {
+        controller.unbind();
+        // Prefetched waveforms come straight from memory.
+        view.loadAudioResourceAsync(context, resIds[track.index]);
+        if (trackChangeListener != null) trackChangeListener.onTrackChanged(track.index);
+    }
+
+    private void startCurrent(Track track) {
+        track.playWhenPrepared = false;
+        controller.bind(track.player);
+        controller.play();
+        chainNext();
+    }
+
+    /** Lets the current player hand over to the next one without a gap once it is ready. */
+    private void chainNext() {
+        Track now = tracks.get(current);
+        Track next = tracks.get(current + 1);
+        if (now != null && now.prepared && next != null && next.prepared) {
+            next.player.seekTo(0);
+            now.player.setNextMediaPlayer(next.player);
+        }
+    }
+
+    /** Keeps players for the tracks next to the current one and drops all others. */
+    private void prefetchNeighbours() {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            int index = tracks.keyAt(i);
+            if (Math.abs(index - current) > 1) {
+                tracks.valueAt(i).release();
+                tracks.removeAt(i);
+            }
+        }
+        if (current + 1 < resIds.length) obtain(current + 1);
+        if (current - 1 >= 0) obtain(current - 1);
+    }
+
+    private Track obtain(int index) {
+        Track track = tracks.get(index);
+        if (track == null) {
+            track = new Track(index);
+            tracks.put(index, track);
+            track.prepare();
+        }
+        return track;
+    }
+
+    private void onPrepared(Track track) {
+        track.prepared = true;
+        if (track.index == current) {
+            if (track.playWhenPrepared) startCurrent(track);
+        } else if (track.index == current + 1) {
+            chainNext();
+        }
+    }
+
+    private void onCompletion(Track track) {
+        if (track.index != current) return;
+        Track next = tracks.get(current + 1);
+        if (next != null && next.prepared) {
+            // setNextMediaPlayer has already started it.
+            track.player.setNextMediaPlayer(null);
+            current = next.index;
+            show(next);
+            controller.bind(next.player);
+            prefetchNeighbours();
+            chainNext();
+        } else if (next != null && next.failed) {
+            skip(next);
+        } else {
+            controller.refresh();
+        }
+    }
+
+    private void onError(Track track, Exception error) {
+        // The track may have been dropped while the error was posted.
+        if (tracks.get(track.index) != track) return;
+        track.prepared = false;
+        track.failed = true;
+        if (trackErrorListener != null) trackErrorListener.onTrackError(track.index, error);
+        if (track.index == current) skip(track);
+    }
+
+    /** Plays the track after {@code failed}, or stops if it was the last one. */
+    private void skip(Track failed) {
+        if (failed.index + 1 < resIds.length) {
+            play(failed.index + 1);
+        } else {
+            controller.refresh();
+        }
+    }
+
+    private final class Track {
+        final int index;
+        final MediaPlayer player = new MediaPlayer();
+        boolean prepared;
+        /** Could not be prepared or played; skipped until played explicitly. */
+        boolean failed;
+        boolean playWhenPrepared;
+        /** Decodes the waveform ahead of time, sharing the view's own load if it asks first. */
+        WaveformLoader.Request waveform;
+
+        Track(int index) {
+            this.index = index;
+        }
+
+        void prepare() {
+            int resId = resIds[index];
+            player.setOnPreparedListener(mp -> onPrepared(this));
+            player.setOnCompletionListener(mp -> onCompletion(this));
+            player.setOnErrorListener((mp, what, extra) -> {
+                onError(this, new IOException("MediaPlayer error " + what + ", " + extra));
+                return true;
+            });
+            try {
+                player.setDataSource(context, Uri.parse("android.resource://" + context.getPackageName() + "/" + resId));
+                player.prepareAsync();
+            } catch (IOException | IllegalStateException e) {
+                // Posted, so play() finishes setting this track up before it is skipped.
+                mainHandler.post(() -> onError(this, e));
+            }
+
+            WaveformCache cache = WaveformCache.getDefault(context);
+            waveform = WaveformLoader.getDefault().load(SoundBarPlayerView.memoryKeyFor(context, resId),
+                    (barCount, listener) -> AudioLoader.loadResource(context, resId, cache, barCount, listener),
+                    0, false, new WaveformLoader.Callback() {
+                        @Override
+                        public void onBars(int totalBars, float[] chunk, int fromBar) {
+                        }
+
+                        @Override
+                        public void onLoaded(AudioLoader.Result result, Exception error) {
+                        }
+                    });
+        }
+
+        void release() {
+            waveform.cancel();
+            player.release();
+        }
+    }
+}
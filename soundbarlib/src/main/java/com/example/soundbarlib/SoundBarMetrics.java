@@ -0,0 +1,237 @@
+package com.example.soundbarlib;
+
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Opt-in performance counters for waveform loading and drawing. While enabled, loads and
+ * {@link SoundBarPlayerView#onDraw} frames are wrapped in {@link Trace} sections, so they
+ * show up in system traces, and are added to counters that can be read with
+ * {@link #snapshot()} or followed with a {@link Listener}. The counters are atomic and never
+ * lock. While disabled, which is the default, instrumented code only reads one flag.
+ * <p>
+ * The view only draws when something changed, so gaps between draws say nothing about
+ * dropped frames. Those are counted from the frame times of a {@link PlaybackController}
+ * while it animates the playhead on every frame.
+ */
+public final class SoundBarMetrics {
+
+    /** Copying a compressed raw resource out of the APK. */
+    public static final int PHASE_COPY = 0;
+    /** Recognizing the file and parsing its header. */
+    public static final int PHASE_HEADER = 1;
+    /** Decoding the samples into a waveform. */
+    public static final int PHASE_ANALYSIS = 2;
+    /** Asking the media framework for the duration, when the header had none. */
+    public static final int PHASE_PROBE = 3;
+
+    public static final int CACHE_MISS = 0;
+    public static final int CACHE_DISK_HIT = 1;
+    public static final int CACHE_MEMORY_HIT = 2;
+
+    private static final String[] SECTIONS = {
+            "SoundBar:copy", "SoundBar:header", "SoundBar:analysis", "SoundBar:probe"
+    };
+    private static final String DRAW_SECTION = "SoundBar:onDraw";
+
+    // Indices into COUNTERS.
+    private static final int LOADS = 0;
+    private static final int MEMORY_HITS = 1;
+    private static final int DISK_HITS = 2;
+    private static final int MISSES = 3;
+    private static final int BYTES_READ = 4;
+    /** Four entries, one per phase. */
+    private static final int PHASE_NANOS = 5;
+    private static final int FRAMES = 9;
+    private static final int DRAW_NANOS = 10;
+    private static final int BARS_DRAWN = 11;
+    private static final int SLOW_FRAMES = 12;
+    private static final int DROPPED_FRAMES = 13;
+    private static final int COUNTER_COUNT = 14;
+
+    /** Longer gaps between animation frames are a pause, e.g. the screen turning off. */
+    private static final long MAX_FRAME_GAP_NANOS = 1_000_000_000L;
+
+    private static final AtomicLongArray COUNTERS = new AtomicLongArray(COUNTER_COUNT);
+    /** Read by the loader threads as well as the main thread. */
+    private static volatile boolean enabled;
+    private static volatile Listener listener;
+
+    private SoundBarMetrics() {
+    }
+
+    public interface Listener {
+        /**
+         * Called when a load finishes, whether it decoded or hit a cache: on the thread that
+         * ran it, or for memory-cache hits on the thread that asked, usually the main thread.
+         */
+        void onLoad(Load load);
+
+        /** Called on the main thread after each {@link SoundBarPlayerView#onDraw}. */
+        void onFrame(long drawNanos, int barsDrawn);
+
+        /**
+         * Called on the main thread when a {@link PlaybackController} animating the playhead
+         * missed {@code droppedFrames} display frames in a row.
+         */
+        void onDroppedFrames(int droppedFrames);
+    }
+
+    /** The cost of one load. */
+    public static final class Load {
+        /** Nanoseconds per {@code PHASE_} constant. */
+        public final long[] phaseNanos;
+        public final long bytesRead;
+        /** One of the {@code CACHE_} constants. */
+        public final int cacheResult;
+
+        Load(long[] phaseNanos, long bytesRead, int cacheResult) {
+            this.phaseNanos = phaseNanos;
+            this.bytesRead = bytesRead;
+            this.cacheResult = cacheResult;
+        }
+    }
+
+    /** Totals since the counters were last {@linkplain #reset() reset}. */
+    public static final class Snapshot {
+        public final long loads;
+        public final long memoryHits;
+        public final long diskHits;
+        public final long misses;
+        public final long bytesRead;
+        /** Nanoseconds per {@code PHASE_} constant. */
+        public final long[] phaseNanos;
+        public final long frames;
+        public final long drawNanos;
+        public final long barsDrawn;
+        /** Frames whose {@code onDraw} took longer than a display frame. */
+        public final long slowFrames;
+        /** Display frames missed while a {@link PlaybackController} was animating. */
+        public final long droppedFrames;
+
+        private Snapshot(long[] values) {
+            loads = values[LOADS];
+            memoryHits = values[MEMORY_HITS];
+            diskHits = values[DISK_HITS];
+            misses = values[MISSES];
+            bytesRead = values[BYTES_READ];
+            phaseNanos = new long[SECTIONS.length];
+            System.arraycopy(values, PHASE_NANOS, phaseNanos, 0, phaseNanos.length);
+            frames = values[FRAMES];
+            drawNanos = values[DRAW_NANOS];
+            barsDrawn = values[BARS_DRAWN];
+            slowFrames = values[SLOW_FRAMES];
+            droppedFrames = values[DROPPED_FRAMES];
+        }
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Also receives events while enabled; {@code null} removes the listener. */
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+
+    public static Snapshot snapshot() {
+        long[] values = new long[COUNTER_COUNT];
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            values[i] = COUNTERS.get(i);
+        }
+        return new Snapshot(values);
+    }
+
+    public static void reset() {
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            COUNTERS.set(i, 0);
+        }
+    }
+
+    /** Starts measuring a load on the calling thread, or returns {@code null} while disabled. */
+    static LoadTrace beginLoad() {
+        return enabled ? new LoadTrace() : null;
+    }
+
+    /** Records a load served from a {@link WaveformMemoryCache}, if enabled. */
+    static void recordMemoryHit() {
+        if (enabled) new LoadTrace().finish(CACHE_MEMORY_HIT);
+    }
+
+    /** Records a frame whose {@code onDraw} ran from {@code startNanos} to {@code endNanos}. */
+    static void recordFrame(long startNanos, long endNanos, int barsDrawn, long frameIntervalNanos) {
+        long drawNanos = endNanos - startNanos;
+        COUNTERS.incrementAndGet(FRAMES);
+        COUNTERS.addAndGet(DRAW_NANOS, drawNanos);
+        COUNTERS.addAndGet(BARS_DRAWN, barsDrawn);
+        if (drawNanos > frameIntervalNanos) COUNTERS.incrementAndGet(SLOW_FRAMES);
+        Listener current = listener;
+        if (current != null) current.onFrame(drawNanos, barsDrawn);
+    }
+
+    /**
+     * Records a {@code Choreographer} frame at {@code frameNanos} that directly follows one at
+     * {@code previousFrameNanos} in a run of frames requested one after another. Display
+     * frames missing in between are counted as dropped.
+     */
+    static void recordAnimationFrame(long previousFrameNanos, long frameNanos, long frameIntervalNanos) {
+        long gap = frameNanos - previousFrameNanos;
+        if (frameIntervalNanos <= 0 || gap > MAX_FRAME_GAP_NANOS) return;
+        long dropped = (gap + frameIntervalNanos / 2) / frameIntervalNanos - 1;
+        if (dropped <= 0) return;
+        COUNTERS.addAndGet(DROPPED_FRAMES, dropped);
+        Listener current = listener;
+        if (current != null) current.onDroppedFrames((int) dropped);
+    }
+
+    static void beginDrawSection() {
+        Trace.beginSection(DRAW_SECTION);
+    }
+
+    static void endDrawSection() {
+        Trace.endSection();
+    }
+
+    /** Phases of one load on one thread. Sections must not overlap. */
+    static final class LoadTrace {
+        private final long[] phaseNanos = new long[SECTIONS.length];
+        private long bytesRead;
+        private int phase = -1;
+        private long phaseStart;
+
+        void begin(int phase) {
+            Trace.beginSection(SECTIONS[phase]);
+            this.phase = phase;
+            phaseStart = System.nanoTime();
+        }
+
+        void end() {
+            if (phase < 0) return;
+            phaseNanos[phase] += System.nanoTime() - phaseStart;
+            phase = -1;
+            Trace.endSection();
+        }
+
+        void addBytesRead(long bytes) {
+            bytesRead += bytes;
+        }
+
+        void finish(int cacheResult) {
+            end();
+            COUNTERS.incrementAndGet(LOADS);
+            COUNTERS.incrementAndGet(cacheResult == CACHE_MEMORY_HIT ? MEMORY_HITS
+                    : cacheResult == CACHE_DISK_HIT ? DISK_HITS : MISSES);
+            COUNTERS.addAndGet(BYTES_READ, bytesRead);
+            for (int i = 0; i < phaseNanos.length; i++) {
+                if (phaseNanos[i] != 0) COUNTERS.addAndGet(PHASE_NANOS + i, phaseNanos[i]);
+            }
+            Listener current = listener;
+            if (current != null) current.onLoad(new Load(phaseNanos.clone(), bytesRead, cacheResult));
+        }
+    }
+}
@@ -3,19 +3,106 @@ package com.example.soundbarlib;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.*;
-import android.media.MediaMetadataRetriever;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Display;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
+import android.view.ViewConfiguration;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class SoundBarPlayerView extends View {
 
-    private List<Integer> amplitudes = new ArrayList<>();
+    /** Draws every bar each frame on a software layer, which the blurred glow needs. */
+    public static final int RENDER_MODE_DIRECT = 0;
+    /**
+     * Renders the waveform into cached bitmaps and only blits them each frame, so the view
+     * stays hardware accelerated. Uses two view-sized bitmaps.
+     */
+    public static final int RENDER_MODE_LAYERED = 1;
+
+    /** Reports every touch position while dragging, then the final one on release. */
+    public static final int SEEK_MODE_CONTINUOUS = 0;
+    /**
+     * Only previews the position while dragging and reports a single final seek on release.
+     * A cancelled drag seeks nowhere.
+     */
+    public static final int SEEK_MODE_ON_RELEASE = 1;
+    /**
+     * Reports the position at most once per {@linkplain #setSeekInterval seek interval} while
+     * dragging; positions in between are coalesced and the latest one wins.
+     */
+    public static final int SEEK_MODE_THROTTLED = 2;
+
+    private static final String TAG = "SoundBarPlayerView";
+    private static final long DEFAULT_SEEK_INTERVAL_MS = 100;
+    /**
+     * Pyramids up to this size are saved with the instance state. Larger ones are kept in the
+     * {@link WaveformMemoryCache}, and only the drawn bars are saved, so the state stays well
+     * below the Binder limit.
+     */
+    private static final int MAX_SAVED_WAVEFORM_BYTES = 64 * 1024;
+
+    /** How far the blurred glow reaches past its bar. */
+    private static final int GLOW_RADIUS = 10;
+    private static final float TIME_MARGIN = 5f;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private Waveform waveform;
+    private WaveformCache waveformCache;
+    private WaveformMemoryCache memoryCache = WaveformMemoryCache.getDefault();
+    /** Where the current waveform was loaded from, so it can be found again after recreation. */
+    private File sourceFile;
+    private int sourceResId;
+    private String sourceKey;
+    private byte[] amplitudes = new byte[0];
+    /** Heights below the center line when drawing an envelope, otherwise {@code null}. */
+    private byte[] lowAmplitudes;
+    private int waveformMetric = Waveform.METRIC_MEAN;
+    /** Played bars of {@link #amplitudes}, derived from {@link #progress}. */
     private int playedBars = 0;
+    /** Played fraction of the whole waveform. */
+    private float progress = 0f;
+    /** How many times the whole waveform is magnified, and the fraction at the left edge. */
+    private float zoom = 1f;
+    private float viewStart = 0f;
+    private boolean zoomEnabled = true;
+    /**
+     * Bars the whole waveform is split into at the current zoom. {@link #amplitudes} holds
+     * the visible window of them, starting with bar {@link #windowFromBar}.
+     */
+    private int virtualBars;
+    private int windowFromBar;
+    private float windowOffsetX;
+    private float windowBarWidth;
+    private byte[] windowLevels;
+    private byte[] windowLowLevels;
+    /** What {@link #windowLevels} was last filled from, so a pan within a bar keeps them. */
+    private Waveform windowSource;
+    private int windowSourceBars;
+    private int windowSourceFromBar;
+    private ScaleGestureDetector scaleDetector;
+    private float lastFocusX;
+    /** Set while more than one finger is down, so touches zoom instead of seeking. */
+    private boolean multiTouch;
+    /** Set when a touch starts zoomed in, so one finger pans and a tap seeks. */
+    private boolean dragPans;
+    private boolean panning;
+    private float downX;
+    private float lastPanX;
+    private int touchSlop;
     private Paint gradientPaint;
     private Paint backgroundPaint;
     private Paint glowPaint;
@@ -26,10 +113,72 @@ public class SoundBarPlayerView extends View {
     private float durationInSeconds = 0f;
     private boolean isSeeking = false;
     private float seekX = 0f;
+    private int seekMode = SEEK_MODE_CONTINUOUS;
+    private long seekIntervalMs = DEFAULT_SEEK_INTERVAL_MS;
+    private long lastSeekTime;
+    private float pendingSeek = -1f;
+    /** Progress reported by the player while a drag overrides the displayed progress. */
+    private float progressBeforeSeek;
+    private final Runnable dispatchPendingSeek = this::dispatchPendingSeek;
     private int barColor = Color.parseColor("#00E676");
+    private final BarGeometry geometry = new BarGeometry();
+    private final TimeLabel currentLabel = new TimeLabel();
+    private final TimeLabel totalLabel = new TimeLabel();
+    private final TimeLabel bubbleLabel = new TimeLabel();
+    private float totalLabelWidth;
+    private float bubbleLabelWidth;
+    private boolean shaderDirty = true;
+    private final Rect clipBounds = new Rect();
+    private int renderMode = RENDER_MODE_DIRECT;
+    private final WaveformLayers layers = new WaveformLayers(GLOW_RADIUS);
+    private Executor loadExecutor;
+    private WaveformLoader loader;
+    private Future<?> pendingLoad;
+    private WaveformLoader.Request pendingRequest;
+    private WaveformLoader.Task pendingTask;
+    /** The load to start again if the view is reattached after its request was cancelled. */
+    private WaveformLoader.Task detachedLoad;
+    private int loadGeneration = 0;
+    private LoadState loadState = LoadState.IDLE;
+    private OnLoadStateListener loadStateListener;
+    private boolean progressiveLoading = true;
+    private float[] partialRaw;
+    private float partialMax;
+    private int partialBars;
+    /** The recording shown while in live mode, otherwise {@code null}. */
+    private LiveWaveform live;
+    private byte[] liveLevels;
+    private long liveBars;
+    /** When the newest live bar arrived, to slide the bars smoothly until the next one. */
+    private long liveBarTime;
+    private final Runnable liveFrame = this::onLiveFrame;
+    /** Display frame length, read on attach, for counting slow and dropped frames. */
+    private long frameIntervalNanos = 1_000_000_000L / 60;
 
     public interface OnSeekListener {
-        void onSeekTo(float percent);
+        /**
+         * @param percent the seek position, from 0 to 1
+         * @param isFinal {@code false} while the user is still dragging, {@code true} for the
+         *                position the drag ended on
+         */
+        void onSeekTo(float percent, boolean isFinal);
+    }
+
+    public enum LoadState {
+        IDLE,
+        LOADING,
+        READY,
+        FAILED
+    }
+
+    public interface OnLoadStateListener {
+        /**
+         * Called on the main thread whenever a load starts, finishes or fails.
+         *
+         * @param error the failure cause when {@code state} is {@link LoadState#FAILED},
+         *              otherwise {@code null}
+         */
+        void onLoadStateChanged(LoadState state, Throwable error);
     }
 
     public SoundBarPlayerView(Context context) {
@@ -46,9 +195,14 @@ public class SoundBarPlayerView extends View {
         if (attrs != null) {
             TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.SoundBarPlayerView);
             barColor = a.getColor(R.styleable.SoundBarPlayerView_barColor, barColor);
+            renderMode = a.getInt(R.styleable.SoundBarPlayerView_renderMode, renderMode);
+            seekMode = a.getInt(R.styleable.SoundBarPlayerView_seekMode, seekMode);
+            waveformMetric = a.getInt(R.styleable.SoundBarPlayerView_waveformMetric, waveformMetric);
             a.recycle();
         }
 
+        waveformCache = WaveformCache.getDefault(getContext());
+
         gradientPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         gradientPaint.setStyle(Paint.Style.FILL);
 
@@ -59,7 +213,7 @@ public class SoundBarPlayerView extends View {
         glowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         glowPaint.setStyle(Paint.Style.FILL);
         glowPaint.setColor(applyAlpha(barColor, 0.27f));
-        glowPaint.setMaskFilter(new BlurMaskFilter(10, BlurMaskFilter.Blur.NORMAL));
+        glowPaint.setMaskFilter(new BlurMaskFilter(GLOW_RADIUS, BlurMaskFilter.Blur.NORMAL));
 
         timePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         timePaint.setColor(0xFF333333);
@@ -76,12 +230,111 @@ public class SoundBarPlayerView extends View {
         bubbleTextPaint.setTextSize(34f);
         bubbleTextPaint.setFakeBoldText(true);
 
-        setLayerType(LAYER_TYPE_SOFTWARE, null);
+        scaleDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                lastFocusX = detector.getFocusX();
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                // Keep the point under the fingers there, so moving them also pans.
+                float anchor = xToFraction(lastFocusX);
+                float newZoom = zoom * detector.getScaleFactor();
+                lastFocusX = detector.getFocusX();
+                setViewport(anchor - lastFocusX / (getWidth() * Math.max(1f, newZoom)), newZoom);
+                return true;
+            }
+        });
+        // A double tap and drag would also seek.
+        scaleDetector.setQuickScaleEnabled(false);
+        touchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
+
+        applyRenderMode();
+    }
+
+    /**
+     * Switches between {@link #RENDER_MODE_DIRECT} (the default) and
+     * {@link #RENDER_MODE_LAYERED}.
+     */
+    public void setRenderMode(int mode) {
+        if (mode == renderMode) return;
+        renderMode = mode;
+        applyRenderMode();
+        invalidate();
+    }
+
+    public int getRenderMode() {
+        return renderMode;
+    }
+
+    private void applyRenderMode() {
+        if (renderMode == RENDER_MODE_LAYERED) {
+            setLayerType(LAYER_TYPE_NONE, null);
+        } else {
+            layers.release();
+            setLayerType(LAYER_TYPE_SOFTWARE, null);
+        }
+    }
+
+    /**
+     * Chooses how a drag is reported to the {@link OnSeekListener}:
+     * {@link #SEEK_MODE_CONTINUOUS} (the default), {@link #SEEK_MODE_ON_RELEASE} or
+     * {@link #SEEK_MODE_THROTTLED}. Every mode ends a drag with a final seek.
+     */
+    public void setSeekMode(int mode) {
+        this.seekMode = mode;
+    }
+
+    public int getSeekMode() {
+        return seekMode;
+    }
+
+    /** Minimum time between seeks in {@link #SEEK_MODE_THROTTLED}; 100 ms by default. */
+    public void setSeekInterval(long intervalMs) {
+        this.seekIntervalMs = intervalMs;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        layers.release();
+        removeCallbacks(dispatchPendingSeek);
+        removeCallbacks(liveFrame);
+        isSeeking = false;
+        // A recycled list row must not keep a decode busy; it resumes if it comes back.
+        if (pendingRequest != null) {
+            WaveformLoader.Task task = pendingTask;
+            cancelPendingLoad();
+            detachedLoad = task;
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        Display display = getDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : 0f;
+        frameIntervalNanos = (long) (1_000_000_000L / (refreshRate > 0f ? refreshRate : 60f));
+        if (live != null) postOnAnimation(liveFrame);
+        if (detachedLoad != null && loadState == LoadState.LOADING) {
+            startLoad(detachedLoad);
+        }
+        detachedLoad = null;
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        if (pendingRequest != null) pendingRequest.setVisible(isVisible);
     }
 
     public void setBarColor(int color) {
         this.barColor = color;
         glowPaint.setColor(applyAlpha(color, 0.27f));
+        shaderDirty = true;
+        layers.markGlowDirty();
         invalidate();
     }
 
@@ -91,148 +344,1006 @@ public class SoundBarPlayerView extends View {
     }
 
     public void loadAudio(File file) {
-        this.durationInSeconds = extractDurationInSeconds(file);
-        int barCount = getWidth() > 0 ? getWidth() / 4 : 300;
-        amplitudes = WaveformGenerator.generateFromWav(file, barCount);
-        playedBars = 0;
+        setSource(file, 0, memoryKeyFor(file));
+        if (showFromMemory()) return;
+        cancelPendingLoad();
+        try {
+            applyLoad(AudioLoader.loadFile(file, waveformCache, 0, null));
+        } catch (IOException | RuntimeException e) {
+            // Codec errors and sources too long to analyse surface as runtime exceptions.
+            applyLoadFailure(e);
+        }
+    }
+
+    /**
+     * Like {@link #loadAudio}, but decodes the file in the background through the shared
+     * {@link WaveformLoader}, or on the {@linkplain #setLoadExecutor load executor} if one is
+     * set. A newer load, or a call to {@link #setWaveform}, cancels this one; its result is
+     * then never applied. Detaching the view, e.g. when a list recycles it, also cancels the
+     * load, and reattaching it starts the load again.
+     */
+    public void loadAudioAsync(File file) {
+        setSource(file, 0, memoryKeyFor(file));
+        if (showFromMemory()) return;
+        WaveformCache cache = waveformCache;
+        startLoad((barCount, listener) -> AudioLoader.loadFile(file, cache, barCount, listener));
+    }
+
+    /**
+     * Shows a precomputed waveform, e.g. one produced by {@link WaveformGenerator#analyze},
+     * and resets playback progress. Passing {@code null} clears the view.
+     */
+    public void setWaveform(Waveform waveform) {
+        setSource(null, 0, null);
+        cancelPendingLoad();
+        showWaveform(waveform);
+        setLoadState(waveform != null ? LoadState.READY : LoadState.IDLE, null);
+    }
+
+    /**
+     * Shows {@code recording} while it is being recorded. Each display frame the newest bars
+     * are read from it and scroll in from the right, and the elapsed time is shown. Seeking
+     * and zooming are off until {@link #stopLive()}. Only the visible bars are kept, so the
+     * view's memory does not grow with the recording.
+     */
+    public void startLive(LiveWaveform recording) {
+        setWaveform(null);
+        live = recording;
+        liveBars = -1;
+        removeCallbacks(liveFrame);
+        postOnAnimation(liveFrame);
+    }
+
+    /**
+     * Leaves live mode and shows the whole recording as a normal waveform, ready to play. Its
+     * bars come from the pyramid the recording collected, so nothing is analysed again. The
+     * producer must have stopped writing; see {@link LiveWaveform#finish()}.
+     */
+    public void stopLive() {
+        if (live == null) return;
+        PeakPyramid pyramid = live.finish();
+        setWaveform(pyramid.toWaveform(barCountFor(getWidth()), waveformMetric));
+    }
+
+    /** Whether the view is showing a recording in progress. */
+    public boolean isLive() {
+        return live != null;
+    }
+
+    private void onLiveFrame() {
+        if (live == null) return;
+        int width = getWidth();
+        if (width > 0) {
+            // One bar more than fits, for the one sliding out on the left.
+            int visible = barCountFor(width);
+            if (liveLevels == null || liveLevels.length != visible + 1) {
+                liveLevels = new byte[visible + 1];
+                liveBars = -1;
+            }
+            long now = SystemClock.uptimeMillis();
+            long bars = live.readBars(liveLevels);
+            if (bars != liveBars) {
+                liveBars = bars;
+                liveBarTime = now;
+                geometry.markDirty();
+            }
+            // The newest bar enters from the right edge over one bar duration.
+            float slide = Math.min(1f, (now - liveBarTime) / live.getBarDurationMs());
+            amplitudes = liveLevels;
+            lowAmplitudes = null;
+            virtualBars = liveLevels.length;
+            windowFromBar = 0;
+            windowBarWidth = (float) width / visible;
+            windowOffsetX = -slide * windowBarWidth;
+            playedBars = liveLevels.length;
+            progress = 1f;
+            durationInSeconds = live.getDurationMs() / 1000f;
+            invalidate();
+        }
+        postOnAnimation(liveFrame);
+    }
+
+    private void showWaveform(Waveform waveform) {
+        partialRaw = null;
+        live = null;
+        removeCallbacks(liveFrame);
+        if (waveform != null) {
+            waveform = waveform.withMetric(waveformMetric);
+            if (getWidth() > 0) waveform = waveform.withBarCount(barCountFor(getWidth()));
+        }
+        this.waveform = waveform;
+        amplitudes = new byte[0];
+        lowAmplitudes = null;
+        durationInSeconds = waveform != null ? waveform.getDurationMs() / 1000f : 0f;
+        progress = 0f;
+        zoom = 1f;
+        updateViewport();
+    }
+
+    public Waveform getWaveform() {
+        return waveform;
+    }
+
+    /**
+     * Chooses what the bars show: one of the {@code Waveform.METRIC_} constants, such as
+     * {@link Waveform#METRIC_RMS} or the asymmetric {@link Waveform#METRIC_ENVELOPE}. The
+     * bars are re-derived from the waveform's pyramid, so the file is not decoded again.
+     * Bars drawn while a file is still loading always show {@link Waveform#METRIC_MEAN}.
+     */
+    public void setWaveformMetric(int metric) {
+        if (metric == waveformMetric) return;
+        waveformMetric = metric;
+        if (waveform != null && partialRaw == null) {
+            replaceBars(waveform.withMetric(metric));
+            invalidate();
+        }
+    }
+
+    public int getWaveformMetric() {
+        return waveformMetric;
+    }
+
+    /** Swaps in bars derived from the current waveform, keeping progress and viewport. */
+    private void replaceBars(Waveform derived) {
+        waveform = derived;
+        updateViewport();
+    }
+
+    /**
+     * Zooms to {@code zoom} times the full width (1 shows the whole waveform) with the
+     * fraction {@code start} of the waveform at the left edge. Both are clamped to what the
+     * waveform supports. Only the visible bars are derived and drawn, at the level of detail
+     * the zoom needs, so frames cost the same however long the file is.
+     */
+    public void setViewport(float start, float zoom) {
+        zoom = Math.max(1f, Math.min(zoom, getMaxZoom()));
+        start = Math.max(0f, Math.min(start, 1f - 1f / zoom));
+        if (zoom == this.zoom && start == viewStart) return;
+        this.zoom = zoom;
+        viewStart = start;
+        updateViewport();
+    }
+
+    public float getZoom() {
+        return zoom;
+    }
+
+    /** Fraction of the waveform at the left edge of the view. */
+    public float getViewportStart() {
+        return viewStart;
+    }
+
+    /** Deepest zoom the current waveform has detail for; 1 if it cannot be zoomed. */
+    public float getMaxZoom() {
+        if (waveform == null || waveform.getPyramid() == null || waveform.getBarCount() == 0) return 1f;
+        return Math.max(1f, waveform.getPyramid().getBinCount(0) / (float) waveform.getBarCount());
+    }
+
+    /** Whether two fingers pinch to zoom and drag to pan. Enabled by default. */
+    public void setZoomEnabled(boolean enabled) {
+        this.zoomEnabled = enabled;
+        if (!enabled) setViewport(0f, 1f);
+    }
+
+    /**
+     * Points {@link #amplitudes} at the bars visible in the current viewport. Unzoomed, these
+     * are the waveform's own bars; zoomed in, the visible window is filled from the pyramid
+     * into reused arrays.
+     */
+    private void updateViewport() {
+        int width = getWidth();
+        if (waveform != null && zoom > 1f && waveform.getPyramid() != null) {
+            PeakPyramid pyramid = waveform.getPyramid();
+            virtualBars = pyramid.barCountFor(Math.round(waveform.getBarCount() * zoom));
+            windowBarWidth = width * zoom / virtualBars;
+            int count = Math.min(virtualBars, (int) Math.ceil(virtualBars / zoom) + 1);
+            windowFromBar = Math.max(0, Math.min((int) (viewStart * virtualBars), virtualBars - count));
+            windowOffsetX = (windowFromBar - viewStart * virtualBars) * windowBarWidth;
+            if (windowLevels == null || windowLevels.length != count) {
+                windowLevels = new byte[count];
+                windowLowLevels = new byte[count];
+                windowSource = null;
+            }
+            int metric = waveform.getMetric();
+            // Otherwise only the offset moved, and the geometry shifts its cached bars.
+            if (windowSource != waveform || windowSourceBars != virtualBars || windowSourceFromBar != windowFromBar) {
+                pyramid.fillBars(virtualBars, windowFromBar, metric, waveform.getExactPeak(), windowLevels, windowLowLevels);
+                windowSource = waveform;
+                windowSourceBars = virtualBars;
+                windowSourceFromBar = windowFromBar;
+                geometry.markDirty();
+            }
+            amplitudes = windowLevels;
+            lowAmplitudes = metric == Waveform.METRIC_ENVELOPE ? windowLowLevels : null;
+        } else {
+            windowSource = null;
+            zoom = 1f;
+            viewStart = 0f;
+            if (waveform != null) {
+                amplitudes = waveform.levels;
+                lowAmplitudes = waveform.lowLevels;
+            }
+            virtualBars = amplitudes.length;
+            windowFromBar = 0;
+            windowOffsetX = 0f;
+            windowBarWidth = virtualBars > 0 ? (float) width / virtualBars : 0f;
+        }
+        playedBars = playedBarsFor(progress);
         invalidate();
     }
 
-    public void loadAudioResource(Context context, int resId) {
-        File wavFile = FileUtil.rawToWavFile(context, resId);
-        if (wavFile != null) {
-            loadAudio(wavFile);
+    private int playedBarsFor(float fraction) {
+        int bars = (int) (fraction * virtualBars) - windowFromBar;
+        return Math.max(0, Math.min(amplitudes.length, bars));
+    }
+
+    /** X coordinate of the playhead; outside the view when it is scrolled out of sight. */
+    private float playX() {
+        return (progress - viewStart) * zoom * getWidth();
+    }
+
+    /** Fraction of the waveform under {@code x}. */
+    private float xToFraction(float x) {
+        float fraction = viewStart + x / (getWidth() * zoom);
+        return Math.max(0f, Math.min(1f, fraction));
+    }
+
+    private static int barCountFor(int width) {
+        return width > 0 ? width / 4 : 300;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        shaderDirty = true;
+        if (waveform != null && w > 0) {
+            // Re-bin from the pyramid so the bars always match the new width.
+            waveform = waveform.withBarCount(barCountFor(w));
         }
+        updateViewport();
     }
 
-    private float extractDurationInSeconds(File file) {
+    public void loadAudioResource(Context context, int resId) {
+        setSource(null, resId, memoryKeyFor(context, resId));
+        if (showFromMemory()) return;
+        cancelPendingLoad();
         try {
-            MediaMetadataRetriever mmr = new MediaMetadataRetriever();
-            mmr.setDataSource(file.getAbsolutePath());
-            String durationStr = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-            mmr.release();
-            return Float.parseFloat(durationStr) / 1000f;
-        } catch (Exception e) {
-            return 0f;
+            applyLoad(AudioLoader.loadResource(context, resId, waveformCache, 0, null));
+        } catch (IOException | RuntimeException e) {
+            // Codec errors and sources too long to analyse surface as runtime exceptions.
+            applyLoadFailure(e);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #loadAudioResource}; see {@link #loadAudioAsync}.
+     */
+    public void loadAudioResourceAsync(Context context, int resId) {
+        setSource(null, resId, memoryKeyFor(context, resId));
+        if (showFromMemory()) return;
+        Context appContext = context.getApplicationContext();
+        WaveformCache cache = waveformCache;
+        startLoad((barCount, listener) ->
+                AudioLoader.loadResource(appContext, resId, cache, barCount, listener));
+    }
+
+    /**
+     * Sets the executor that runs asynchronous loads. By default they go through the shared
+     * {@link WaveformLoader}; an executor of your own gets no prioritization or deduplication.
+     * Pass {@code null} to go back to the loader.
+     */
+    public void setLoadExecutor(Executor executor) {
+        this.loadExecutor = executor;
+    }
+
+    /**
+     * Sets the loader that schedules asynchronous loads; by default this is
+     * {@link WaveformLoader#getDefault()}. Views sharing a loader share its threads, its
+     * queue and its decodes.
+     */
+    public void setWaveformLoader(WaveformLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Whether asynchronous loads draw bars left to right while the file is still decoding.
+     * Enabled by default.
+     */
+    public void setProgressiveLoading(boolean progressive) {
+        this.progressiveLoading = progressive;
+    }
+
+    public void setOnLoadStateListener(OnLoadStateListener listener) {
+        this.loadStateListener = listener;
+    }
+
+    public LoadState getLoadState() {
+        return loadState;
+    }
+
+    private void startLoad(WaveformLoader.Task task) {
+        cancelPendingLoad();
+        int generation = loadGeneration;
+        int barCount = barCountFor(getWidth());
+        if (loadExecutor == null) {
+            startSharedLoad(task, generation, barCount);
+            return;
         }
+        WaveformGenerator.ProgressListener listener = progressiveLoading ? (raw, fromBar, toBar) -> {
+            float[] chunk = new float[toBar - fromBar];
+            System.arraycopy(raw, fromBar, chunk, 0, chunk.length);
+            int totalBars = raw.length;
+            mainHandler.post(() -> {
+                if (generation == loadGeneration) appendPartialBars(totalBars, chunk, fromBar);
+            });
+        } : null;
+        FutureTask<Void> future = new FutureTask<>(() -> {
+            AudioLoader.Result result = null;
+            Exception error = null;
+            try {
+                result = task.load(barCount, listener);
+            } catch (Exception e) {
+                error = e;
+            }
+            AudioLoader.Result loaded = result;
+            Exception failure = error;
+            mainHandler.post(() -> {
+                // A newer load or setWaveform call owns the view now.
+                if (generation != loadGeneration) return;
+                pendingLoad = null;
+                if (loaded != null) {
+                    applyLoad(loaded);
+                } else {
+                    applyLoadFailure(failure);
+                }
+            });
+            return null;
+        });
+        pendingLoad = future;
+        showWaveform(null);
+        setLoadState(LoadState.LOADING, null);
+        loadExecutor.execute(future);
+    }
+
+    /** Runs {@code task} through the {@link WaveformLoader}, which may share it with other views. */
+    private void startSharedLoad(WaveformLoader.Task task, int generation, int barCount) {
+        boolean progressive = progressiveLoading;
+        WaveformLoader.Callback callback = new WaveformLoader.Callback() {
+            @Override
+            public void onBars(int totalBars, float[] chunk, int fromBar) {
+                if (progressive && generation == loadGeneration) appendPartialBars(totalBars, chunk, fromBar);
+            }
+
+            @Override
+            public void onLoaded(AudioLoader.Result result, Exception error) {
+                if (generation != loadGeneration) return;
+                pendingRequest = null;
+                pendingTask = null;
+                if (result != null) {
+                    applyLoad(result);
+                } else {
+                    applyLoadFailure(error);
+                }
+            }
+        };
+        showWaveform(null);
+        setLoadState(LoadState.LOADING, null);
+        WaveformLoader sharedLoader = loader != null ? loader : WaveformLoader.getDefault();
+        pendingTask = task;
+        pendingRequest = sharedLoader.load(sourceKey, task, barCount, isAttachedToWindow() && isShown(), callback);
     }
 
+    /**
+     * Adds bars decoded so far. Bars are normalized against the running maximum, so only the
+     * new bars are scaled unless that maximum grows.
+     */
+    private void appendPartialBars(int totalBars, float[] chunk, int fromBar) {
+        if (partialRaw == null || partialRaw.length != totalBars) {
+            partialRaw = new float[totalBars];
+            partialMax = 1f;
+            partialBars = 0;
+            amplitudes = new byte[totalBars];
+            lowAmplitudes = null;
+            updateViewport();
+        }
+        System.arraycopy(chunk, 0, partialRaw, fromBar, chunk.length);
+        float max = partialMax;
+        for (float value : chunk) {
+            max = Math.max(max, value);
+        }
+        int from = fromBar;
+        if (max > partialMax) {
+            partialMax = max;
+            from = 0;
+        }
+        partialBars = fromBar + chunk.length;
+        for (int i = from; i < partialBars; i++) {
+            amplitudes[i] = WaveformGenerator.normalize(partialRaw[i], partialMax);
+        }
+        geometry.markDirty();
+        invalidate();
+    }
+
+    private void cancelPendingLoad() {
+        loadGeneration++;
+        detachedLoad = null;
+        if (pendingLoad != null) {
+            pendingLoad.cancel(true);
+            pendingLoad = null;
+        }
+        if (pendingRequest != null) {
+            pendingRequest.cancel();
+            pendingRequest = null;
+            pendingTask = null;
+        }
+    }
+
+    private void applyLoad(AudioLoader.Result result) {
+        if (memoryCache != null && sourceKey != null) {
+            memoryCache.put(sourceKey, result.pyramid);
+        }
+        showWaveform(result.pyramid.toWaveform(barCountFor(getWidth()), waveformMetric));
+        durationInSeconds = result.durationInSeconds;
+        setLoadState(LoadState.READY, null);
+    }
+
+    private void applyLoadFailure(Throwable error) {
+        showWaveform(null);
+        setLoadState(LoadState.FAILED, error);
+    }
+
+    private void setLoadState(LoadState state, Throwable error) {
+        loadState = state;
+        if (loadStateListener != null) {
+            loadStateListener.onLoadStateChanged(state, error);
+        }
+    }
+
+    /**
+     * Sets the cache used by {@link #loadAudio} and {@link #loadAudioResource}; by default
+     * this is {@link WaveformCache#getDefault}. Pass {@code null} to always decode.
+     */
+    public void setWaveformCache(WaveformCache cache) {
+        this.waveformCache = cache;
+    }
+
+    /**
+     * Sets the in-memory cache that lets a reload, or a view recreated after a configuration
+     * change, skip all I/O; by default this is {@link WaveformMemoryCache#getDefault}. Pass
+     * {@code null} to disable it.
+     */
+    public void setWaveformMemoryCache(WaveformMemoryCache cache) {
+        this.memoryCache = cache;
+    }
+
+    private void setSource(File file, int resId, String key) {
+        sourceFile = file;
+        sourceResId = resId;
+        sourceKey = key;
+    }
+
+    /** Identifies a file by path, size and modification time; only stats it. */
+    private static String memoryKeyFor(File file) {
+        return "file:" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    /** Also used by {@link Playlist} to decode waveforms ahead into the same cache entry. */
+    static String memoryKeyFor(Context context, int resId) {
+        return "res:" + context.getPackageName() + ":" + resId;
+    }
+
+    /** Shows the current source's pyramid if it is still in memory. */
+    private boolean showFromMemory() {
+        PeakPyramid pyramid = memoryCache != null ? memoryCache.get(sourceKey) : null;
+        if (pyramid == null) return false;
+        SoundBarMetrics.recordMemoryHit();
+        cancelPendingLoad();
+        showWaveform(pyramid.toWaveform(barCountFor(getWidth()), waveformMetric));
+        durationInSeconds = pyramid.getDurationMs() / 1000f;
+        setLoadState(LoadState.READY, null);
+        return true;
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.progress = progress;
+        state.durationInSeconds = durationInSeconds;
+        state.zoom = zoom;
+        state.viewStart = viewStart;
+        state.sourcePath = sourceFile != null ? sourceFile.getPath() : null;
+        state.sourceResId = sourceResId;
+        // A failed or still running load is simply started again on restore.
+        if (waveform != null && loadState == LoadState.READY) {
+            PeakPyramid pyramid = waveform.getPyramid();
+            if (pyramid != null && WaveformFile.sizeOf(pyramid) <= MAX_SAVED_WAVEFORM_BYTES) {
+                state.pyramid = WaveformFile.toByteArray(pyramid);
+            } else {
+                if (pyramid != null && memoryCache != null) {
+                    String key = sourceKey != null ? sourceKey : "view:" + System.identityHashCode(pyramid);
+                    memoryCache.put(key, pyramid);
+                    state.memoryKey = key;
+                }
+                // Also the fallback if the pyramid is evicted before the view is restored.
+                saveLevels(state, waveform);
+            }
+        }
+        return state;
+    }
+
+    private static void saveLevels(SavedState state, Waveform waveform) {
+        state.levels = waveform.levels;
+        state.lowLevels = waveform.lowLevels;
+        state.metric = waveform.getMetric();
+        state.sampleRate = waveform.getSampleRate();
+        state.durationMs = waveform.getDurationMs();
+        state.peak = waveform.getPeak();
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable parcelable) {
+        if (!(parcelable instanceof SavedState)) {
+            super.onRestoreInstanceState(parcelable);
+            return;
+        }
+        SavedState state = (SavedState) parcelable;
+        super.onRestoreInstanceState(state.getSuperState());
+
+        Waveform restored = null;
+        if (state.pyramid != null) {
+            try {
+                restored = WaveformFile.fromByteArray(state.pyramid).toWaveform(barCountFor(getWidth()), waveformMetric);
+            } catch (IOException e) {
+                // Falls back to loading the source again below.
+                Log.w(TAG, "Could not restore the saved waveform", e);
+            }
+        } else if (state.memoryKey != null && memoryCache != null) {
+            PeakPyramid pyramid = memoryCache.get(state.memoryKey);
+            if (pyramid != null) restored = pyramid.toWaveform(barCountFor(getWidth()), waveformMetric);
+        }
+
+        File file = state.sourcePath != null ? new File(state.sourcePath) : null;
+        // Saved bars cannot be zoomed or re-binned, so a source is loaded again instead.
+        if (restored == null && state.levels != null && file == null && state.sourceResId == 0) {
+            restored = new Waveform(state.levels, state.lowLevels, state.metric, state.sampleRate,
+                    state.durationMs, state.peak, null);
+        }
+        if (restored != null) {
+            cancelPendingLoad();
+            showWaveform(restored);
+            durationInSeconds = state.durationInSeconds;
+            setLoadState(LoadState.READY, null);
+            setSource(file, state.sourceResId, file != null ? memoryKeyFor(file)
+                    : state.sourceResId != 0 ? memoryKeyFor(getContext(), state.sourceResId) : state.memoryKey);
+            showProgress(state.progress);
+            setViewport(state.viewStart, state.zoom);
+        } else if (file != null) {
+            // Evicted, e.g. because the process was restarted; the disk cache still helps.
+            loadAudioAsync(file);
+        } else if (state.sourceResId != 0) {
+            loadAudioResourceAsync(getContext(), state.sourceResId);
+        }
+    }
+
+    static class SavedState extends BaseSavedState {
+        float progress;
+        float durationInSeconds;
+        float zoom;
+        float viewStart;
+        String sourcePath;
+        int sourceResId;
+        /**
+         * The waveform as a serialized pyramid, or as bars, optionally with the cache key of
+         * its pyramid; or none of them.
+         */
+        byte[] pyramid;
+        String memoryKey;
+        byte[] levels;
+        byte[] lowLevels;
+        int metric;
+        int sampleRate;
+        long durationMs;
+        int peak;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            progress = in.readFloat();
+            durationInSeconds = in.readFloat();
+            zoom = in.readFloat();
+            viewStart = in.readFloat();
+            sourcePath = in.readString();
+            sourceResId = in.readInt();
+            pyramid = in.createByteArray();
+            memoryKey = in.readString();
+            levels = in.createByteArray();
+            lowLevels = in.createByteArray();
+            metric = in.readInt();
+            sampleRate = in.readInt();
+            durationMs = in.readLong();
+            peak = in.readInt();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeFloat(progress);
+            out.writeFloat(durationInSeconds);
+            out.writeFloat(zoom);
+            out.writeFloat(viewStart);
+            out.writeString(sourcePath);
+            out.writeInt(sourceResId);
+            out.writeByteArray(pyramid);
+            out.writeString(memoryKey);
+            out.writeByteArray(levels);
+            out.writeByteArray(lowLevels);
+            out.writeInt(metric);
+            out.writeInt(sampleRate);
+            out.writeLong(durationMs);
+            out.writeInt(peak);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    /** Sets progress in bars out of {@link #getTotalBars()}. */
     public void setPlayedBars(int bars) {
-        if (bars > amplitudes.size()) bars = amplitudes.size();
+        int total = getTotalBars();
+        if (bars > total) bars = total;
         if (bars < 0) bars = 0;
-        playedBars = bars;
-        invalidate();
+        float fraction = total > 0 ? bars / (float) total : 0f;
+        if (isSeeking) {
+            progressBeforeSeek = fraction;
+            return;
+        }
+        int newBars = zoom == 1f ? bars : playedBarsFor(fraction);
+        if (newBars == playedBars && fraction == progress) return;
+        int oldBars = playedBars;
+        playedBars = newBars;
+        progress = fraction;
+        invalidateProgress(oldBars, newBars);
     }
 
+    /**
+     * Sets the played fraction of the waveform, from 0 to 1. Unlike {@link #setPlayedBars},
+     * the bar under the playhead is drawn partially played, so progress moves smoothly.
+     * While the user drags, the drag position is shown instead.
+     */
+    public void setProgress(float fraction) {
+        if (fraction < 0f) fraction = 0f;
+        if (fraction > 1f) fraction = 1f;
+        if (isSeeking) {
+            progressBeforeSeek = fraction;
+            return;
+        }
+        showProgress(fraction);
+    }
+
+    private void showProgress(float fraction) {
+        if (fraction == progress) return;
+        int oldBars = playedBars;
+        progress = fraction;
+        playedBars = playedBarsFor(fraction);
+        invalidateProgress(oldBars, playedBars);
+    }
+
+    public float getProgress() {
+        return progress;
+    }
+
+    /**
+     * Invalidates only what a playhead move from bar {@code from} to bar {@code to} changes:
+     * the columns in between (including the glow after the playhead) and, when the displayed
+     * second changes, the current-time label.
+     */
+    private void invalidateProgress(int from, int to) {
+        int width = getWidth();
+        int height = getHeight();
+        if (isSeeking || width == 0 || amplitudes.length == 0) {
+            invalidate();
+            return;
+        }
+        float barWidth = windowBarWidth;
+        int first = Math.min(from, to);
+        int last = Math.max(from, to) + 1;
+        int left = (int) (windowOffsetX + first * barWidth) - GLOW_RADIUS;
+        int right = (int) Math.ceil(windowOffsetX + last * barWidth + barWidth) + GLOW_RADIUS;
+        invalidate(Math.max(0, left), 0, Math.min(width, right), height);
+
+        float currentSeconds = progress * durationInSeconds;
+        if (currentLabel.differs(currentSeconds)) {
+            // The current time is never wider than the total time.
+            int labelRight = (int) Math.ceil(TIME_MARGIN * 2 + Math.max(totalLabelWidth,
+                    timePaint.measureText(currentLabel.chars, 0, currentLabel.length)));
+            int labelTop = (int) (height - TIME_MARGIN - timePaint.getTextSize());
+            invalidate(0, Math.max(0, labelTop), labelRight, height);
+        }
+    }
+
+    /** Bars across the whole waveform when it is not zoomed. */
     public int getTotalBars() {
-        return amplitudes.size();
+        return waveform != null ? waveform.getBarCount() : amplitudes.length;
     }
 
     public void setOnSeekListener(OnSeekListener listener) {
         this.seekListener = listener;
     }
 
-    private String formatTime(float seconds) {
-        int mins = (int) (seconds / 60);
-        int secs = (int) (seconds % 60);
-        return String.format("%d:%02d", mins, secs);
-    }
-
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if (amplitudes == null || amplitudes.isEmpty()) return;
+        if (!SoundBarMetrics.isEnabled()) {
+            drawWaveform(canvas);
+            return;
+        }
+        SoundBarMetrics.beginDrawSection();
+        long start = System.nanoTime();
+        int barsDrawn = drawWaveform(canvas);
+        SoundBarMetrics.recordFrame(start, System.nanoTime(), barsDrawn, frameIntervalNanos);
+        SoundBarMetrics.endDrawSection();
+    }
+
+    /** Length of a display frame on the screen the view is attached to. */
+    long getFrameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+
+    /** @return the number of bars drawn */
+    private int drawWaveform(Canvas canvas) {
+        if (amplitudes.length == 0) {
+            if (loadState == LoadState.LOADING) drawPlaceholder(canvas);
+            return 0;
+        }
 
+        // Everything below is cached; steady-state frames allocate nothing.
         int width = getWidth();
         int height = getHeight();
-        int barCount = amplitudes.size();
-        float barWidth = (float) width / barCount;
-        float centerY = height * 0.4f;
+        geometry.update(amplitudes, lowAmplitudes, width, height, windowOffsetX, windowBarWidth);
+        if (shaderDirty) {
+            gradientPaint.setShader(createGradient(width));
+            shaderDirty = false;
+            layers.markDirty();
+        }
 
-        for (int i = 0; i < barCount; i++) {
-            float left = i * barWidth;
-            float amp = amplitudes.get(i) / 100f * height * 0.6f;
-            float top = centerY - amp / 2;
-            float bottom = centerY + amp / 2;
-            canvas.drawRoundRect(left, top, left + barWidth, bottom, 6f, 6f, backgroundPaint);
+        int barsDrawn;
+        if (renderMode == RENDER_MODE_LAYERED) {
+            barsDrawn = partialRaw != null ? partialBars : geometry.count;
+            layers.render(geometry, barsDrawn, width, height, backgroundPaint, gradientPaint, glowPaint);
+            layers.draw(canvas, geometry, playedBars, playX(), width, height);
+        } else {
+            barsDrawn = drawBars(canvas);
         }
+        drawLabels(canvas, width, height);
+        return barsDrawn;
+    }
 
-        LinearGradient gradient = new LinearGradient(
-                0, 0, width, 0,
-                new int[]{
-                        lightenColor(barColor, 0.4f),
-                        barColor,
-                        darkenColor(barColor, 0.2f)
-                },
-                null,
-                Shader.TileMode.CLAMP
-        );
-        gradientPaint.setShader(gradient);
+    /** @return the number of bars inside the clip */
+    private int drawBars(Canvas canvas) {
+        int barCount = geometry.count;
+        float barWidth = geometry.barWidth;
+        float[] lefts = geometry.left;
+        float[] tops = geometry.top;
+        float[] bottoms = geometry.bottom;
 
-        Path waveformPath = new Path();
-        for (int i = 0; i < playedBars; i++) {
-            float left = i * barWidth;
-            float amp = amplitudes.get(i) / 100f * height * 0.6f;
-            float top = centerY - amp / 2;
-            float bottom = centerY + amp / 2;
-            waveformPath.addRoundRect(left, top, left + barWidth, bottom, 6f, 6f, Path.Direction.CW);
+        // Progress updates only invalidate the columns that changed; skip every bar outside.
+        canvas.getClipBounds(clipBounds);
+        float offsetX = windowOffsetX;
+        int firstBar = Math.max(0, (int) ((clipBounds.left - GLOW_RADIUS - offsetX) / barWidth));
+        int lastBar = Math.min(barCount, (int) Math.ceil((clipBounds.right + GLOW_RADIUS - offsetX) / barWidth) + 1);
+
+        // While decoding progressively only the bars that have arrived are drawn.
+        int drawnBars = partialRaw != null ? Math.min(partialBars, lastBar) : lastBar;
+        for (int i = firstBar; i < drawnBars; i++) {
+            canvas.drawRoundRect(lefts[i], tops[i], lefts[i] + barWidth, bottoms[i], 6f, 6f, backgroundPaint);
         }
-        canvas.drawPath(waveformPath, gradientPaint);
 
-        if (playedBars > 0 && playedBars < amplitudes.size()) {
-            float glowLeft = playedBars * barWidth;
-            float glowAmp = amplitudes.get(playedBars) / 100f * height * 0.6f;
-            float glowTop = centerY - glowAmp / 2;
-            float glowBottom = centerY + glowAmp / 2;
-            canvas.drawRoundRect(glowLeft, glowTop, glowLeft + barWidth, glowBottom, 6f, 6f, glowPaint);
+        int playedEnd = Math.min(playedBars, lastBar);
+        for (int i = firstBar; i < playedEnd; i++) {
+            canvas.drawRoundRect(lefts[i], tops[i], lefts[i] + barWidth, bottoms[i], 6f, 6f, gradientPaint);
         }
 
-        float currentSeconds = (playedBars / (float) barCount) * durationInSeconds;
-        String currentTime = formatTime(currentSeconds);
-        String totalTime = formatTime(durationInSeconds);
+        // The bar under the playhead is played up to the exact progress position.
+        float playX = playX();
+        if (playedBars < barCount && playX > lefts[playedBars]
+                && playedBars >= firstBar && playedBars < lastBar) {
+            canvas.save();
+            canvas.clipRect(lefts[playedBars], 0f, playX, getHeight());
+            canvas.drawRoundRect(lefts[playedBars], tops[playedBars], lefts[playedBars] + barWidth,
+                    bottoms[playedBars], 6f, 6f, gradientPaint);
+            canvas.restore();
+        }
+
+        if (playedBars > 0 && playedBars < barCount) {
+            canvas.drawRoundRect(lefts[playedBars], tops[playedBars], lefts[playedBars] + barWidth,
+                    bottoms[playedBars], 6f, 6f, glowPaint);
+        }
+        return Math.max(0, drawnBars - firstBar);
+    }
 
-        float margin = 5f;
+    private void drawLabels(Canvas canvas, int width, int height) {
+        float currentSeconds = progress * durationInSeconds;
+        currentLabel.set(currentSeconds);
+        if (totalLabel.set(durationInSeconds)) {
+            totalLabelWidth = timePaint.measureText(totalLabel.chars, 0, totalLabel.length);
+        }
+
+        float margin = TIME_MARGIN;
         float yTime = getHeight() - margin;
-        canvas.drawText(currentTime, margin, yTime, timePaint);
-        float totalWidth = timePaint.measureText(totalTime);
-        canvas.drawText(totalTime, width - totalWidth - margin, yTime, timePaint);
+        canvas.drawText(currentLabel.chars, 0, currentLabel.length, margin, yTime, timePaint);
+        canvas.drawText(totalLabel.chars, 0, totalLabel.length, width - totalLabelWidth - margin, yTime, timePaint);
 
         if (isSeeking) {
-            float percent = seekX / getWidth();
-            if (percent < 0f) percent = 0f;
-            if (percent > 1f) percent = 1f;
+            float percent = xToFraction(seekX);
             float bubbleX = seekX;
-            float bubbleY = centerY - height * 0.3f;
+            float bubbleY = geometry.centerY - height * 0.3f;
             float radius = 75f;
-            String timeStr = formatTime(durationInSeconds * percent);
+            if (bubbleLabel.set(durationInSeconds * percent)) {
+                bubbleLabelWidth = bubbleTextPaint.measureText(bubbleLabel.chars, 0, bubbleLabel.length);
+            }
             canvas.drawCircle(bubbleX, bubbleY, radius, bubblePaint);
-            float textWidth = bubbleTextPaint.measureText(timeStr);
-            canvas.drawText(timeStr, bubbleX - textWidth / 2, bubbleY + bubbleTextPaint.getTextSize() / 3, bubbleTextPaint);
+            canvas.drawText(bubbleLabel.chars, 0, bubbleLabel.length, bubbleX - bubbleLabelWidth / 2,
+                    bubbleY + bubbleTextPaint.getTextSize() / 3, bubbleTextPaint);
+        }
+    }
+
+    private Shader createGradient(int width) {
+        return new LinearGradient(
+                0, 0, width, 0,
+                new int[]{
+                        lightenColor(barColor, 0.4f),
+                        barColor,
+                        darkenColor(barColor, 0.2f)
+                },
+                null,
+                Shader.TileMode.CLAMP
+        );
+    }
+
+    /** Flat bars shown while a waveform is loading. */
+    private void drawPlaceholder(Canvas canvas) {
+        int width = getWidth();
+        int barCount = barCountFor(width);
+        float barWidth = (float) width / barCount;
+        float centerY = getHeight() * 0.4f;
+        float amp = getHeight() * 0.04f;
+        for (int i = 0; i < barCount; i += 2) {
+            float left = i * barWidth;
+            canvas.drawRoundRect(left, centerY - amp, left + barWidth, centerY + amp, 6f, 6f, backgroundPaint);
         }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        if (seekListener == null || amplitudes.isEmpty()) return false;
+        boolean zoomable = zoomEnabled && getMaxZoom() > 1f;
+        if ((seekListener == null && !zoomable) || amplitudes.length == 0 || live != null) return false;
+        if (zoomable) scaleDetector.onTouchEvent(event);
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
-            case MotionEvent.ACTION_MOVE:
+                multiTouch = false;
+                downX = event.getX();
+                dragPans = zoom > 1f;
+                panning = false;
+                if (dragPans || seekListener == null) return true;
+                progressBeforeSeek = progress;
+                lastSeekTime = 0;
+                // Fall through.
+            case MotionEvent.ACTION_MOVE: {
+                // One finger seeks, or pans while zoomed in; two zoom and pan, and the seek
+                // stays over until they lift.
+                if (multiTouch) return true;
+                if (dragPans) {
+                    pan(event.getX());
+                    return true;
+                }
+                if (seekListener == null) return true;
+                float percent = updateSeekPosition(event);
                 isSeeking = true;
-                seekX = event.getX();
-                float percent = seekX / getWidth();
-                if (percent < 0f) percent = 0f;
-                if (percent > 1f) percent = 1f;
-                seekListener.onSeekTo(percent);
+                if (seekMode == SEEK_MODE_CONTINUOUS) {
+                    seekListener.onSeekTo(percent, false);
+                } else if (seekMode == SEEK_MODE_THROTTLED) {
+                    throttleSeek(percent);
+                }
                 invalidate();
                 return true;
-            case MotionEvent.ACTION_UP:
+            }
+            case MotionEvent.ACTION_POINTER_DOWN:
+                multiTouch = true;
+                if (isSeeking) cancelSeek();
+                return true;
+            case MotionEvent.ACTION_UP: {
+                if (dragPans) {
+                    // A tap that did not pan seeks to where it landed.
+                    if (!panning && !multiTouch && seekListener != null) {
+                        float percent = xToFraction(event.getX());
+                        showProgress(percent);
+                        seekListener.onSeekTo(percent, true);
+                    }
+                    return true;
+                }
+                if (!isSeeking) return true;
+                float percent = updateSeekPosition(event);
+                endSeek();
+                seekListener.onSeekTo(percent, true);
+                return true;
+            }
             case MotionEvent.ACTION_CANCEL:
-                isSeeking = false;
-                invalidate();
+                if (isSeeking) cancelSeek();
                 return true;
         }
-        return false;
+        return true;
+    }
+
+    /** Scrolls the zoomed waveform with a one-finger drag, once it moved past the touch slop. */
+    private void pan(float x) {
+        if (!panning) {
+            if (Math.abs(x - downX) < touchSlop) return;
+            panning = true;
+            lastPanX = x;
+            return;
+        }
+        setViewport(viewStart - (x - lastPanX) / (getWidth() * zoom), zoom);
+        lastPanX = x;
+    }
+
+    /** Ends a drag that did not end with the finger lifting. */
+    private void cancelSeek() {
+        endSeek();
+        if (seekMode == SEEK_MODE_ON_RELEASE) {
+            showProgress(progressBeforeSeek);
+        } else {
+            seekListener.onSeekTo(progress, true);
+        }
+    }
+
+    /** Moves the bubble and the displayed progress to the touch position. */
+    private float updateSeekPosition(MotionEvent event) {
+        seekX = event.getX();
+        float percent = xToFraction(seekX);
+        showProgress(percent);
+        return percent;
+    }
+
+    private void throttleSeek(float percent) {
+        long now = SystemClock.uptimeMillis();
+        long wait = lastSeekTime + seekIntervalMs - now;
+        if (wait <= 0) {
+            removeCallbacks(dispatchPendingSeek);
+            pendingSeek = -1f;
+            lastSeekTime = now;
+            seekListener.onSeekTo(percent, false);
+        } else {
+            if (pendingSeek < 0f) postDelayed(dispatchPendingSeek, wait);
+            pendingSeek = percent;
+        }
+    }
+
+    private void dispatchPendingSeek() {
+        if (pendingSeek < 0f || !isSeeking || seekListener == null) return;
+        float percent = pendingSeek;
+        pendingSeek = -1f;
+        lastSeekTime = SystemClock.uptimeMillis();
+        seekListener.onSeekTo(percent, false);
+    }
+
+    private void endSeek() {
+        removeCallbacks(dispatchPendingSeek);
+        pendingSeek = -1f;
+        isSeeking = false;
+        invalidate();
     }
 
     // פונקציות עזר לצבעים
@@ -0,0 +1,42 @@
+package com.example.soundbarlib;
+
+/**
+ * An {@code m:ss} label kept in a reusable char array. It is only re-formatted when the
+ * displayed second changes, so drawing it every frame allocates nothing.
+ */
+class TimeLabel {
+
+    final char[] chars = new char[16];
+    int length;
+    private int seconds = -1;
+
+    /** Whether {@link #set} with {@code time} would change the text. */
+    boolean differs(float time) {
+        return Math.max(0, (int) time) != seconds;
+    }
+
+    /** @return whether the text changed */
+    boolean set(float time) {
+        int whole = Math.max(0, (int) time);
+        if (whole == seconds) return false;
+        seconds = whole;
+
+        int mins = whole / 60;
+        int secs = whole % 60;
+        int digits = 1;
+        for (int m = mins; m >= 10; m /= 10) digits++;
+        length = digits + 3;
+        for (int i = digits - 1, m = mins; i >= 0; i--, m /= 10) {
+            chars[i] = (char) ('0' + m % 10);
+        }
+        chars[digits] = ':';
+        chars[digits + 1] = (char) ('0' + secs / 10);
+        chars[digits + 2] = (char) ('0' + secs % 10);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.soundbarlib;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Disk cache of computed {@link PeakPyramid}s, stored as {@link WaveformFile}s in one
+ * directory. Entries are written atomically and evicted least-recently-used first once the
+ * directory grows past its byte budget.
+ */
+public class WaveformCache {
+
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private static final String TAG = "WaveformCache";
+    private static final String SUFFIX = ".wf";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** Temporary files older than this were left behind by a crash mid-write. */
+    private static final long STALE_TEMP_MS = 60_000;
+    private static final int HASH_SAMPLE_BYTES = 64 * 1024;
+
+    private static WaveformCache defaultCache;
+
+    private final File directory;
+    private final long maxBytes;
+
+    public WaveformCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /** The shared cache under {@code getCacheDir()/waveforms}, with {@link #DEFAULT_MAX_BYTES}. */
+    public static synchronized WaveformCache getDefault(Context context) {
+        if (defaultCache == null) {
+            File dir = new File(context.getApplicationContext().getCacheDir(), "waveforms");
+            defaultCache = new WaveformCache(dir, DEFAULT_MAX_BYTES);
+        }
+        return defaultCache;
+    }
+
+    /** Key for a raw resource; it changes whenever the app is updated. */
+    public static String keyForResource(Context context, int resId) {
+        return "res:" + context.getPackageName() + ":" + resId + ":" + FileUtil.appVersion(context);
+    }
+
+    /**
+     * Key for a file: its path, size and modification time, plus a hash of its first and
+     * last 64 KB so a rewritten file with a preserved timestamp is still told apart.
+     */
+    public static String keyForFile(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            byte[] buffer = new byte[(int) Math.min(HASH_SAMPLE_BYTES, length)];
+            raf.readFully(buffer);
+            crc.update(buffer);
+            if (length > HASH_SAMPLE_BYTES) {
+                raf.seek(Math.max(HASH_SAMPLE_BYTES, length - HASH_SAMPLE_BYTES));
+                int read = raf.read(buffer);
+                if (read > 0) crc.update(buffer, 0, read);
+            }
+            return "file:" + file.getAbsolutePath() + ":" + length + ":" + file.lastModified()
+                    + ":" + Long.toHexString(crc.getValue());
+        }
+    }
+
+    /**
+     * Returns the cached pyramid for {@code key}, or {@code null} if there is none or it could
+     * not be read. Corrupt entries are deleted; entries whose read failed, e.g. because the
+     * thread was interrupted, are kept.
+     */
+    public PeakPyramid get(String key) {
+        File file = fileFor(key);
+        if (!file.isFile()) return null;
+        try (FileInputStream in = new FileInputStream(file)) {
+            PeakPyramid pyramid = WaveformFile.read(in.getChannel());
+            file.setLastModified(System.currentTimeMillis());
+            return pyramid;
+        } catch (WaveformFormatException e) {
+            Log.w(TAG, "Deleting corrupt cache entry " + file, e);
+            file.delete();
+            return null;
+        } catch (IOException e) {
+            // Includes the ClosedByInterruptException of a cancelled load.
+            return null;
+        }
+    }
+
+    /**
+     * Stores {@code pyramid} under {@code key}. The entry is written to a temporary file and
+     * renamed into place, so readers never see a partial write.
+     *
+     * @return whether the entry was written
+     */
+    public boolean put(String key, PeakPyramid pyramid) {
+        // Silence is cheap to decode again, and WaveformFile rejects empty pyramids.
+        if (pyramid.getFrameCount() == 0 || WaveformFile.sizeOf(pyramid) > maxBytes) return false;
+        if (!directory.isDirectory() && !directory.mkdirs()) return false;
+
+        File target = fileFor(key);
+        File temp = null;
+        try {
+            temp = File.createTempFile("wf-", TEMP_SUFFIX, directory);
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                WaveformFile.write(pyramid, out.getChannel());
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(target)) {
+                throw new IOException("Could not rename " + temp + " to " + target);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write cache entry " + target, e);
+            if (temp != null) temp.delete();
+            return false;
+        }
+        trimToSize();
+        return true;
+    }
+
+    public void remove(String key) {
+        fileFor(key).delete();
+    }
+
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /** Deletes the least recently used entries until the cache fits its byte budget. */
+    private synchronized void trimToSize() {
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MS;
+        File[] temps = directory.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+        if (temps != null) {
+            for (File temp : temps) {
+                if (temp.lastModified() < staleBefore) temp.delete();
+            }
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) return;
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) return;
+
+        long[] lastUsed = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastUsed[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lastUsed[a], lastUsed[b]));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) total -= length;
+        }
+    }
+
+    private File fileFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
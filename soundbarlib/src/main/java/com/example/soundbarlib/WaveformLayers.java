@@ -0,0 +1,158 @@
+package com.example.soundbarlib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Pre-rendered bitmaps for {@link SoundBarPlayerView#RENDER_MODE_LAYERED}: the unplayed and
+ * played waveforms, plus a pre-blurred glow sprite. They are rendered in software once per
+ * size, data or color change; each frame then only blits them, which keeps the view
+ * hardware accelerated. The layers hold the bars relative to the first one, so scrolling
+ * only moves the blit.
+ */
+class WaveformLayers {
+
+    /** Corner radius of the bars. */
+    private static final float CORNER = 6f;
+
+    /** Room around the glow bar for its blur. */
+    private final int glowPadding;
+    /** Sprite rows at the top and at the bottom that are never stretched. */
+    private final int glowCap;
+
+    private Bitmap unplayedLayer;
+    private Bitmap playedLayer;
+    private Bitmap glowSprite;
+    private float spriteBarWidth;
+    private float spriteBarHeight;
+    private final Canvas layerCanvas = new Canvas();
+    private final Rect spriteRect = new Rect();
+    private final RectF glowRect = new RectF();
+    private int layersVersion;
+    private boolean layersDirty = true;
+    private boolean glowDirty = true;
+
+    WaveformLayers(int glowRadius) {
+        this.glowPadding = glowRadius * 2;
+        this.glowCap = glowPadding + (int) Math.ceil(CORNER);
+    }
+
+    /** The bars or their paints changed. */
+    void markDirty() {
+        layersDirty = true;
+    }
+
+    /** The glow paint changed. */
+    void markGlowDirty() {
+        glowDirty = true;
+    }
+
+    /** Renders whatever is out of date; a no-op in steady state. */
+    void render(BarGeometry geometry, int drawnBars, int width, int height,
+                Paint backgroundPaint, Paint playedPaint, Paint glowPaint) {
+        // Scrolled bars can reach past the right edge by a bar or two.
+        int layerWidth = Math.max(width, (int) Math.ceil(geometry.count * geometry.barWidth));
+        if (unplayedLayer == null || unplayedLayer.getWidth() < layerWidth || unplayedLayer.getHeight() != height) {
+            release();
+            unplayedLayer = Bitmap.createBitmap(layerWidth, height, Bitmap.Config.ARGB_8888);
+            playedLayer = Bitmap.createBitmap(layerWidth, height, Bitmap.Config.ARGB_8888);
+            layersDirty = true;
+        }
+        if (layersDirty || layersVersion != geometry.version) {
+            drawBars(unplayedLayer, geometry, drawnBars, backgroundPaint);
+            drawBars(playedLayer, geometry, drawnBars, playedPaint);
+            layersVersion = geometry.version;
+            layersDirty = false;
+        }
+
+        float barHeight = height * 0.6f;
+        if (glowSprite == null || glowDirty || spriteBarHeight != barHeight
+                || spriteBarWidth != geometry.barWidth) {
+            if (glowSprite != null) glowSprite.recycle();
+            int spriteWidth = (int) Math.ceil(geometry.barWidth) + glowPadding * 2;
+            int spriteHeight = Math.max((int) Math.ceil(barHeight), 1) + glowCap * 2;
+            glowSprite = Bitmap.createBitmap(Math.max(1, spriteWidth), Math.max(1, spriteHeight),
+                    Bitmap.Config.ARGB_8888);
+            layerCanvas.setBitmap(glowSprite);
+            layerCanvas.drawRoundRect(glowPadding, glowPadding, glowPadding + geometry.barWidth,
+                    spriteHeight - glowPadding, CORNER, CORNER, glowPaint);
+            layerCanvas.setBitmap(null);
+            spriteBarWidth = geometry.barWidth;
+            spriteBarHeight = barHeight;
+            glowDirty = false;
+        }
+    }
+
+    private void drawBars(Bitmap layer, BarGeometry geometry, int drawnBars, Paint paint) {
+        layer.eraseColor(0);
+        layerCanvas.setBitmap(layer);
+        float barWidth = geometry.barWidth;
+        float offsetX = geometry.offsetX;
+        for (int i = 0; i < drawnBars; i++) {
+            float left = geometry.left[i] - offsetX;
+            layerCanvas.drawRoundRect(left, geometry.top[i], left + barWidth, geometry.bottom[i],
+                    CORNER, CORNER, paint);
+        }
+        layerCanvas.setBitmap(null);
+    }
+
+    /**
+     * Draws the played layer left of {@code playX}, the unplayed one right of it, and the glow
+     * on bar {@code playedBars}.
+     */
+    void draw(Canvas canvas, BarGeometry geometry, int playedBars, float playX, int width, int height) {
+        float offsetX = geometry.offsetX;
+        canvas.save();
+        canvas.clipRect(0, 0, playX, height);
+        canvas.drawBitmap(playedLayer, offsetX, 0, null);
+        canvas.restore();
+
+        canvas.save();
+        canvas.clipRect(playX, 0, width, height);
+        canvas.drawBitmap(unplayedLayer, offsetX, 0, null);
+        canvas.restore();
+
+        if (playedBars > 0 && playedBars < geometry.count && geometry.bottom[playedBars] > geometry.top[playedBars]) {
+            drawGlow(canvas, geometry.left[playedBars], geometry.top[playedBars], geometry.bottom[playedBars]);
+        }
+    }
+
+    /**
+     * Draws the glow sprite around the bar spanning {@code top} to {@code bottom}, nine-patch
+     * style: the blurred ends keep their size and only the straight middle is stretched, so
+     * short bars do not squash the blur.
+     */
+    private void drawGlow(Canvas canvas, float left, float top, float bottom) {
+        int spriteWidth = glowSprite.getWidth();
+        int spriteHeight = glowSprite.getHeight();
+        float x = left - glowPadding;
+        float y = top - glowPadding;
+        float glowHeight = bottom - top + glowPadding * 2;
+        // Bars shorter than the two rounded ends shrink them evenly instead.
+        float cap = Math.min(glowCap, glowHeight / 2);
+
+        spriteRect.set(0, 0, spriteWidth, glowCap);
+        glowRect.set(x, y, x + spriteWidth, y + cap);
+        canvas.drawBitmap(glowSprite, spriteRect, glowRect, null);
+
+        spriteRect.set(0, glowCap, spriteWidth, spriteHeight - glowCap);
+        glowRect.set(x, y + cap, x + spriteWidth, y + glowHeight - cap);
+        if (glowRect.height() > 0f) canvas.drawBitmap(glowSprite, spriteRect, glowRect, null);
+
+        spriteRect.set(0, spriteHeight - glowCap, spriteWidth, spriteHeight);
+        glowRect.set(x, y + glowHeight - cap, x + spriteWidth, y + glowHeight);
+        canvas.drawBitmap(glowSprite, spriteRect, glowRect, null);
+    }
+
+    void release() {
+        if (unplayedLayer != null) unplayedLayer.recycle();
+        if (playedLayer != null) playedLayer.recycle();
+        if (glowSprite != null) glowSprite.recycle();
+        unplayedLayer = null;
+        playedLayer = null;
+        glowSprite = null;
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.soundbarlib;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the asynchronous loads of many {@link SoundBarPlayerView}s, e.g. the rows of a list
+ * of voice messages, on a few shared threads. Views that are on screen are served before
+ * off-screen ones, and among equals the most recent request goes first, so after a fling the
+ * rows that stopped on screen load before the ones that flew past. Views requesting the same
+ * source share one decode, a load nobody waits for any more is dropped from the queue or
+ * interrupted, and results are kept in a {@link WaveformMemoryCache}.
+ */
+public class WaveformLoader {
+
+    public static final int DEFAULT_MAX_CONCURRENT_LOADS = 2;
+
+    private static WaveformLoader defaultLoader;
+
+    private final ThreadPoolExecutor executor;
+    private final WaveformMemoryCache memoryCache;
+    /** Delivers callbacks; posts them to the main thread outside of tests. */
+    private final Executor callbackExecutor;
+    /** Queued and running jobs by source key. Guarded by {@code this}, like all job state. */
+    private final Map<String, Job> inFlight = new HashMap<>();
+    private long sequence;
+
+    /**
+     * @param maxConcurrentLoads threads decoding at the same time
+     * @param memoryCache        where finished waveforms are kept, or {@code null}
+     */
+    public WaveformLoader(int maxConcurrentLoads, WaveformMemoryCache memoryCache) {
+        this(maxConcurrentLoads, memoryCache, new Handler(Looper.getMainLooper())::post);
+    }
+
+    WaveformLoader(int maxConcurrentLoads, WaveformMemoryCache memoryCache, Executor callbackExecutor) {
+        this.memoryCache = memoryCache;
+        this.callbackExecutor = callbackExecutor;
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "SoundBarLoader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(maxConcurrentLoads, maxConcurrentLoads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The shared loader, with {@link #DEFAULT_MAX_CONCURRENT_LOADS} threads and
+     * {@link WaveformMemoryCache#getDefault()}.
+     */
+    public static synchronized WaveformLoader getDefault() {
+        if (defaultLoader == null) {
+            defaultLoader = new WaveformLoader(DEFAULT_MAX_CONCURRENT_LOADS, WaveformMemoryCache.getDefault());
+        }
+        return defaultLoader;
+    }
+
+    /** The blocking load behind a request; see {@link AudioLoader}. */
+    interface Task {
+        AudioLoader.Result load(int barCount, WaveformGenerator.ProgressListener listener) throws Exception;
+    }
+
+    /** Receives the outcome of a request on the main thread, unless it was cancelled first. */
+    interface Callback {
+        /** Bars {@code [fromBar, fromBar + chunk.length)} out of {@code totalBars} were decoded. */
+        void onBars(int totalBars, float[] chunk, int fromBar);
+
+        /** Exactly one of {@code result} and {@code error} is set. */
+        void onLoaded(AudioLoader.Result result, Exception error);
+    }
+
+    /**
+     * Queues {@code task}, or joins the job already loading {@code key}. A job joined this way
+     * keeps the bar count it was started with, so only requests with the same count receive
+     * its progressive bars.
+     *
+     * @param key     identifies the source, or {@code null} if it cannot be shared
+     * @param visible whether the requesting view is on screen
+     */
+    synchronized Request load(String key, Task task, int barCount, boolean visible, Callback callback) {
+        Request request = new Request(callback, barCount, visible);
+        PeakPyramid cached = key != null && memoryCache != null ? memoryCache.get(key) : null;
+        if (cached != null) {
+            SoundBarMetrics.recordMemoryHit();
+            AudioLoader.Result result = new AudioLoader.Result(cached, cached.getDurationMs() / 1000f);
+            callbackExecutor.execute(() -> {
+                if (!request.cancelled) callback.onLoaded(result, null);
+            });
+            return request;
+        }
+
+        Job job = key != null ? inFlight.get(key) : null;
+        if (job == null) {
+            job = new Job(key, task, barCount);
+            if (key != null) inFlight.put(key, job);
+            request.job = job;
+            job.requests.add(request);
+            job.priority = visible ? 1 : 0;
+            job.sequence = ++sequence;
+            executor.execute(job);
+        } else {
+            request.job = job;
+            job.requests.add(request);
+            reprioritize(job);
+        }
+        return request;
+    }
+
+    /** Moves a queued job to where its requests now put it. */
+    private void reprioritize(Job job) {
+        int priority = 0;
+        for (Request request : job.requests) {
+            if (request.visible) priority = 1;
+        }
+        if (job.started || !executor.remove(job)) return;
+        job.priority = priority;
+        job.sequence = ++sequence;
+        executor.execute(job);
+    }
+
+    /** Drops {@code request}, and its job as well if nobody else waits for it. */
+    private synchronized void cancel(Request request) {
+        if (request.cancelled) return;
+        request.cancelled = true;
+        Job job = request.job;
+        if (job == null || !job.requests.remove(request)) return;
+        if (!job.requests.isEmpty()) {
+            reprioritize(job);
+            return;
+        }
+        if (job.key != null) inFlight.remove(job.key, job);
+        if (!job.started) {
+            executor.remove(job);
+        } else if (job.runner != null) {
+            job.runner.interrupt();
+        }
+    }
+
+    private synchronized void setVisible(Request request, boolean visible) {
+        if (request.cancelled || request.visible == visible) return;
+        request.visible = visible;
+        if (request.job != null) reprioritize(request.job);
+    }
+
+    /** A view's interest in a load. */
+    final class Request {
+        private final Callback callback;
+        private final int barCount;
+        private boolean visible;
+        /** Set on the main thread, where callbacks are delivered. */
+        private boolean cancelled;
+        private Job job;
+
+        private Request(Callback callback, int barCount, boolean visible) {
+            this.callback = callback;
+            this.barCount = barCount;
+            this.visible = visible;
+        }
+
+        /** Stops the callbacks; the decode itself stops too if no other request shares it. */
+        void cancel() {
+            WaveformLoader.this.cancel(this);
+        }
+
+        /** Moves the load ahead of off-screen ones while {@code visible}. */
+        void setVisible(boolean visible) {
+            WaveformLoader.this.setVisible(this, visible);
+        }
+    }
+
+    private final class Job implements Runnable, Comparable<Job> {
+        final String key;
+        final Task task;
+        final int barCount;
+        final List<Request> requests = new ArrayList<>(1);
+        int priority;
+        long sequence;
+        boolean started;
+        Thread runner;
+
+        Job(String key, Task task, int barCount) {
+            this.key = key;
+            this.task = task;
+            this.barCount = barCount;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) return Integer.compare(other.priority, priority);
+            return Long.compare(other.sequence, sequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (WaveformLoader.this) {
+                if (requests.isEmpty()) return;
+                started = true;
+                runner = Thread.currentThread();
+            }
+            AudioLoader.Result result = null;
+            Exception error = null;
+            try {
+                result = task.load(barCount, this::onBars);
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                synchronized (WaveformLoader.this) {
+                    runner = null;
+                    if (key != null) inFlight.remove(key, this);
+                }
+                // An interrupt that came too late must not hit the thread's next job.
+                Thread.interrupted();
+            }
+            if (result != null && key != null && memoryCache != null) {
+                memoryCache.put(key, result.pyramid);
+            }
+            AudioLoader.Result loaded = result;
+            Exception failure = error;
+            callbackExecutor.execute(() -> {
+                for (Request request : snapshot()) {
+                    if (!request.cancelled) request.callback.onLoaded(loaded, failure);
+                }
+            });
+        }
+
+        private void onBars(float[] raw, int fromBar, int toBar) {
+            float[] chunk = new float[toBar - fromBar];
+            System.arraycopy(raw, fromBar, chunk, 0, chunk.length);
+            int totalBars = raw.length;
+            callbackExecutor.execute(() -> {
+                for (Request request : snapshot()) {
+                    if (!request.cancelled && request.barCount == barCount) {
+                        request.callback.onBars(totalBars, chunk, fromBar);
+                    }
+                }
+            });
+        }
+
+        private List<Request> snapshot() {
+            synchronized (WaveformLoader.this) {
+                return new ArrayList<>(requests);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.soundbarlib;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of decoded {@link PeakPyramid}s, keyed by where they came from. A view
+ * recreated after a configuration change finds its waveform here without any I/O. Entries
+ * are evicted least-recently-used first once their total size passes the budget.
+ */
+public class WaveformMemoryCache {
+
+    private static WaveformMemoryCache defaultCache;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, PeakPyramid> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    public WaveformMemoryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** The shared cache, allowed an eighth of the maximum heap. */
+    public static synchronized WaveformMemoryCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new WaveformMemoryCache(Runtime.getRuntime().maxMemory() / 8);
+        }
+        return defaultCache;
+    }
+
+    /** Heap taken by {@code pyramid}: level 0 plus the levels above it, about as much again. */
+    static long sizeOf(PeakPyramid pyramid) {
+        return 2L * WaveformFile.sizeOf(pyramid);
+    }
+
+    public synchronized PeakPyramid get(String key) {
+        return entries.get(key);
+    }
+
+    /** Stores {@code pyramid} unless it alone is larger than the whole budget. */
+    public synchronized void put(String key, PeakPyramid pyramid) {
+        long entrySize = sizeOf(pyramid);
+        if (entrySize > maxBytes) return;
+        PeakPyramid previous = entries.put(key, pyramid);
+        if (previous != null) size -= sizeOf(previous);
+        size += entrySize;
+
+        Iterator<Map.Entry<String, PeakPyramid>> eldest = entries.entrySet().iterator();
+        while (size > maxBytes && eldest.hasNext()) {
+            size -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        PeakPyramid removed = entries.remove(key);
+        if (removed != null) size -= sizeOf(removed);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the bar layout and time labels {@link SoundBarPlayerView#onDraw} reuses every
+ * frame allocate nothing once warm. The drawing itself needs a {@code Canvas}; it is covered
+ * on a device by {@code SoundBarPlayerViewDrawTest}.
+ */
+public class BarGeometryAllocationTest {
+
+    @Test
+    public void warmGeometryAndLabels_doNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        byte[] levels = new byte[300];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = (byte) (i % 101);
+        }
+        BarGeometry geometry = new BarGeometry();
+        float barWidth = 1080f / levels.length;
+        TimeLabel label = new TimeLabel();
+
+        // Warm up the caches and the allocation counter itself.
+        for (int frame = 0; frame < 20_000; frame++) {
+            geometry.update(levels, null, 1080, 360, 0f, barWidth);
+            label.set(42f + (frame % 10) / 10f);
+        }
+        threads.getThreadAllocatedBytes(thread);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        boolean rebuilt = false;
+        for (int frame = 0; frame < 20_000; frame++) {
+            rebuilt |= geometry.update(levels, null, 1080, 360, 0f, barWidth);
+            label.set(42f + (frame % 10) / 10f);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertFalse(rebuilt);
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void timeLabel_formatsMinutesAndSeconds() {
+        TimeLabel label = new TimeLabel();
+        assertTrue(label.set(65.9f));
+        assertEquals("1:05", label.toString());
+        assertFalse(label.set(65.1f));
+        assertTrue(label.set(3600f));
+        assertEquals("60:00", label.toString());
+    }
+}
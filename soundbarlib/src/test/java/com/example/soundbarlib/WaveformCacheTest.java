@@ -0,0 +1,62 @@
+package com.example.soundbarlib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/** Checks that {@link WaveformCache} evicts the least recently used entry once it is full. */
+public class WaveformCacheTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("waveforms").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void trim_evictsLeastRecentlyUsedEntry() {
+        PeakPyramid pyramid = WaveformFileTest.pyramid(20_000);
+        long entryBytes = WaveformFile.sizeOf(pyramid);
+        WaveformCache cache = new WaveformCache(directory, entryBytes * 5 / 2);
+
+        assertTrue(cache.put("a", pyramid));
+        File a = onlyEntry();
+        assertTrue(cache.put("b", pyramid));
+        long now = System.currentTimeMillis();
+        for (File file : directory.listFiles()) {
+            file.setLastModified(file.equals(a) ? now - 20_000 : now - 10_000);
+        }
+
+        // Reading "a" makes "b" the least recently used entry.
+        assertNotNull(cache.get("a"));
+        assertTrue(cache.put("c", pyramid));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    private File onlyEntry() {
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+}
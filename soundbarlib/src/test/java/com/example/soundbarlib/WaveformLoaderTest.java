@@ -0,0 +1,160 @@
+package com.example.soundbarlib;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link WaveformLoader} shares, cancels and orders loads, with one worker thread
+ * held busy by a task that waits for a latch. Callbacks run on the worker thread.
+ */
+public class WaveformLoaderTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final WaveformLoader loader = new WaveformLoader(1, null, Runnable::run);
+
+    @Test
+    public void requestsForOneKey_shareOneDecode() throws Exception {
+        BlockingTask task = new BlockingTask();
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        loader.load("song", task, 100, true, first);
+        assertTrue(task.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        loader.load("song", task, 100, false, second);
+        task.release.countDown();
+
+        assertTrue(first.loaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(second.loaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, task.runs.get());
+        assertNotNull(first.result);
+        assertSame(first.result, second.result);
+    }
+
+    @Test
+    public void cancellingLastRequest_dropsQueuedJobAndInterruptsRunningOne() throws Exception {
+        BlockingTask running = new BlockingTask();
+        BlockingTask queued = new BlockingTask();
+        RecordingCallback runningCallback = new RecordingCallback();
+
+        WaveformLoader.Request runningRequest = loader.load("running", running, 100, true, runningCallback);
+        assertTrue(running.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        WaveformLoader.Request queuedRequest = loader.load("queued", queued, 100, true, new RecordingCallback());
+
+        queuedRequest.cancel();
+        runningRequest.cancel();
+        assertTrue(running.interrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // The worker is free again, and the cancelled job never got it.
+        BlockingTask next = new BlockingTask();
+        next.release.countDown();
+        RecordingCallback nextCallback = new RecordingCallback();
+        loader.load("next", next, 100, true, nextCallback);
+        assertTrue(nextCallback.loaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, queued.runs.get());
+        assertEquals(1, runningCallback.loaded.getCount());
+    }
+
+    @Test
+    public void visibleRequest_isServedBeforeOffScreenOne() throws Exception {
+        BlockingTask blocker = new BlockingTask();
+        loader.load("blocker", blocker, 100, true, new RecordingCallback());
+        assertTrue(blocker.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+        // The off-screen request is the more recent one, so only priority puts it last.
+        loader.load("visible", new OrderedTask("visible", order), 100, true, new CountingCallback(done));
+        loader.load("offscreen", new OrderedTask("offscreen", order), 100, false, new CountingCallback(done));
+        blocker.release.countDown();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("visible", "offscreen"), order);
+    }
+
+    private static AudioLoader.Result result() {
+        BinAccumulator bins = new BinAccumulator(PeakPyramid.FINE_BASE_FRAMES);
+        bins.add(new int[] {1000, -1000, 500}, 3);
+        return new AudioLoader.Result(bins.finish(44100), 0f);
+    }
+
+    /** Runs once {@link #release} opens, and reports an interrupt while it waits. */
+    private static class BlockingTask implements WaveformLoader.Task {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public AudioLoader.Result load(int barCount, WaveformGenerator.ProgressListener listener)
+                throws Exception {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new InterruptedIOException("Cancelled");
+            }
+            return result();
+        }
+    }
+
+    private static class OrderedTask implements WaveformLoader.Task {
+        private final String name;
+        private final List<String> order;
+
+        OrderedTask(String name, List<String> order) {
+            this.name = name;
+            this.order = order;
+        }
+
+        @Override
+        public AudioLoader.Result load(int barCount, WaveformGenerator.ProgressListener listener) {
+            order.add(name);
+            return result();
+        }
+    }
+
+    private static class RecordingCallback implements WaveformLoader.Callback {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        volatile AudioLoader.Result result;
+
+        @Override
+        public void onBars(int totalBars, float[] chunk, int fromBar) {
+        }
+
+        @Override
+        public void onLoaded(AudioLoader.Result result, Exception error) {
+            this.result = result;
+            loaded.countDown();
+        }
+    }
+
+    private static class CountingCallback implements WaveformLoader.Callback {
+        private final CountDownLatch done;
+
+        CountingCallback(CountDownLatch done) {
+            this.done = done;
+        }
+
+        @Override
+        public void onBars(int totalBars, float[] chunk, int fromBar) {
+        }
+
+        @Override
+        public void onLoaded(AudioLoader.Result result, Exception error) {
+            done.countDown();
+        }
+    }
+}